@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import cc.colorcat.netbird.BufferPool;
+import cc.colorcat.netbird.FileParser;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.ResponseBody;
+
+/**
+ * Measures the bytes allocated per copy once {@link BufferPool} is warm, using the per-thread
+ * allocation counter of HotSpot, the allocation checks are skipped on VMs without it.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class BufferPoolTest {
+    private static final int ROUNDS = 200;
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(System.getProperty("java.io.tmpdir"), "netbird-pool-" + System.nanoTime() + ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void reusesBuffers() {
+        byte[] bytes = BufferPool.takeBytes();
+        BufferPool.recycle(bytes);
+        Assert.assertSame(bytes, BufferPool.takeBytes());
+        BufferPool.recycle(new byte[16]);
+        Assert.assertEquals(BufferPool.BYTE_BUFFER_SIZE, BufferPool.takeBytes().length);
+
+        char[] chars = BufferPool.takeChars();
+        BufferPool.recycle(chars);
+        Assert.assertSame(chars, BufferPool.takeChars());
+    }
+
+    @Test
+    public void fileParserAllocatesNoCopyBuffers() throws IOException {
+        final byte[] content = new byte[256 * 1024];
+        final FileParser parser = new FileParser.Builder(file).transferChannel(false).build();
+        long perCopy = measure(new Task() {
+            @Override
+            public void run() throws IOException {
+                Assert.assertTrue(parser.parse(newResponse(content)).isSuccess);
+            }
+        });
+        System.out.println("FileParser, 256 KiB body: " + perCopy + " bytes allocated per response");
+        if (perCopy != -1L) {
+            // the response, the body and the file stream, but no 8 KiB copy buffers
+            Assert.assertTrue(perCopy + " bytes", perCopy < BufferPool.BYTE_BUFFER_SIZE);
+        }
+    }
+
+    @Test
+    public void stringAllocatesOnlyTheResult() throws IOException {
+        final byte[] content = new byte[32 * 1024];
+        Arrays.fill(content, (byte) 'a');
+        long perCopy = measure(new Task() {
+            @Override
+            public void run() throws IOException {
+                Assert.assertEquals(content.length, newResponse(content).responseBody().string().length());
+            }
+        });
+        System.out.println("ResponseBody.string(), 32 KiB body: " + perCopy + " bytes allocated per response");
+    }
+
+    @Test
+    public void bytesAllocatesOnlyTheResultWhenLengthIsKnown() throws IOException {
+        final byte[] content = new byte[256 * 1024];
+        long perCopy = measure(new Task() {
+            @Override
+            public void run() throws IOException {
+                Assert.assertEquals(content.length, newResponse(content).responseBody().bytes().length);
+            }
+        });
+        System.out.println("ResponseBody.bytes(), 256 KiB body: " + perCopy + " bytes allocated per response");
+        if (perCopy != -1L) {
+            // the result itself and the small wrappers, no doubling and no final copy
+            Assert.assertTrue(perCopy + " bytes", perCopy < content.length + BufferPool.BYTE_BUFFER_SIZE);
+        }
+    }
+
+    @Test
+    public void bytesToleratesWrongContentLength() throws IOException {
+        final byte[] content = new byte[10000];
+        for (int i = 0; i < content.length; ++i) {
+            content[i] = (byte) i;
+        }
+        long[] lengths = {-1L, 0L, 1L, 9999L, 10000L, 10001L, 65536L};
+        for (long length : lengths) {
+            ResponseBody body = ResponseBody.create(new ByteArrayInputStream(content), "application/octet-stream", length);
+            Assert.assertArrayEquals("contentLength = " + length, content, body.bytes());
+        }
+    }
+
+    @Test
+    public void bytesDoesNotTrustAHugeContentLength() throws IOException {
+        final byte[] content = new byte[100];
+        Arrays.fill(content, (byte) 'a');
+        long perCopy = measure(new Task() {
+            @Override
+            public void run() throws IOException {
+                ResponseBody body = ResponseBody.create(new ByteArrayInputStream(content), "text/plain", Integer.MAX_VALUE - 8L);
+                Assert.assertArrayEquals(content, body.bytes());
+            }
+        });
+        System.out.println("ResponseBody.bytes(), 100 B body claiming 2 GiB: " + perCopy + " bytes allocated per response");
+        if (perCopy != -1L) {
+            // the capped initial buffer, not the declared length
+            Assert.assertTrue(perCopy + " bytes", perCopy < 2 * 1024 * 1024);
+        }
+    }
+
+    private static long measure(Task task) throws IOException {
+        for (int i = 0; i < ROUNDS; ++i) {
+            task.run();
+        }
+        final long start = allocatedBytes();
+        for (int i = 0; i < ROUNDS; ++i) {
+            task.run();
+        }
+        return start == -1L ? -1L : (allocatedBytes() - start) / ROUNDS;
+    }
+
+    private static Response newResponse(byte[] content) {
+        return new Response.Builder()
+                .responseCode(200)
+                .responseMsg("OK")
+                .responseBody(ResponseBody.create(new ByteArrayInputStream(content), "text/plain", content.length, Charset.forName("UTF-8")))
+                .build();
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, -1 if the VM can't tell.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1L;
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+}
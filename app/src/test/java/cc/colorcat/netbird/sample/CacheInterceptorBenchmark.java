@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.Request;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.cache.CacheControl;
+import cc.colorcat.netbird.cache.CacheInterceptor;
+import cc.colorcat.netbird.cache.DiskCache;
+import cc.colorcat.netbird.cache.MemoryCache;
+
+/**
+ * Measures the latency of a {@link CacheInterceptor} hit, and the bytes allocated by a large hit
+ * with the body mapped or copied onto the heap. The network is touched only once to fill the cache.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class CacheInterceptorBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int HITS = 5000;
+
+    private LoopbackServer server;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackServer();
+        server.start();
+        directory = new File(System.getProperty("java.io.tmpdir"), "netbird-cache-bench-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        DiskCacheTest.delete(directory);
+    }
+
+    @Test
+    public void measureHitLatency() throws IOException {
+        CacheInterceptor disk = CacheInterceptor.newCacheHeadInterceptor(
+                directory, 16L * 1024L * 1024L, Collections.<String>emptyList());
+        System.out.println("cache hit, disk: " + measureHitLatency(disk) + " us");
+        DiskCacheTest.delete(directory);
+        MemoryCache memoryCache = new MemoryCache(1024L * 1024L);
+        CacheInterceptor memory = CacheInterceptor.newCacheHeadInterceptor(
+                directory, 16L * 1024L * 1024L, memoryCache, Collections.<String>emptyList());
+        System.out.println("cache hit, memory: " + measureHitLatency(memory) + " us");
+        Assert.assertEquals(ROUNDS * HITS, memoryCache.hitCount());
+    }
+
+    private long measureHitLatency(CacheInterceptor cache) throws IOException {
+        NetBird bird = new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform())
+                .addHeadInterceptor(cache)
+                .build();
+        Request request = new Request.Builder()
+                .path("hello")
+                .addHeader(CacheControl.HEADER_NAME_MAX_AGE, Long.toString(CacheControl.MAX_AGE_FOREVER))
+                .build();
+        Assert.assertEquals("hello", bird.newCall(request).execute().responseBody().string());
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < HITS; ++i) {
+                Response response = bird.newCall(request).execute();
+                Assert.assertEquals(5, response.responseBody().bytes().length);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return TimeUnit.NANOSECONDS.toMicros(best) / HITS;
+    }
+
+    @Test
+    public void compareMappedWithCopiedBody() throws IOException {
+        long copied = measureLargeHit(Long.MAX_VALUE);
+        long mapped = measureLargeHit(0L);
+        System.out.println("1 MiB cache hit, copied: " + copied + " bytes allocated, mapped: " + mapped + " bytes allocated");
+    }
+
+    private long measureLargeHit(final long threshold) throws IOException {
+        DiskCacheTest.delete(directory);
+        CacheInterceptor cache = new CacheInterceptor(DiskCache.open(directory, 16L * 1024L * 1024L), Collections.<String>emptyList()) {
+            @Override
+            protected long mappedBodyThreshold() {
+                return threshold;
+            }
+        };
+        NetBird bird = new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform())
+                .addHeadInterceptor(cache)
+                .build();
+        Request request = new Request.Builder()
+                .path("blob/1")
+                .addHeader(CacheControl.HEADER_NAME_MAX_AGE, Long.toString(CacheControl.MAX_AGE_FOREVER))
+                .build();
+        bird.newCall(request).execute().responseBody().bytes();
+        byte[] buffer = new byte[8192];
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = allocatedBytes();
+            for (int i = 0; i < 100; ++i) {
+                InputStream input = bird.newCall(request).execute().responseBody().stream();
+                long count = 0L;
+                for (int length = input.read(buffer); length != -1; length = input.read(buffer)) {
+                    count += length;
+                }
+                input.close();
+                Assert.assertEquals(1L << 20, count);
+            }
+            best = Math.min(best, (allocatedBytes() - start) / 100);
+        }
+        return best;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0L;
+    }
+}
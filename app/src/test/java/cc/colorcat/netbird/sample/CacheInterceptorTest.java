@@ -0,0 +1,239 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import cc.colorcat.netbird.Calls;
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.Request;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.cache.CacheControl;
+import cc.colorcat.netbird.cache.CacheInterceptor;
+import cc.colorcat.netbird.cache.DiskCache;
+import cc.colorcat.netbird.cache.MemoryCache;
+
+/**
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class CacheInterceptorTest {
+    private LoopbackServer server;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackServer();
+        server.start();
+        directory = new File(System.getProperty("java.io.tmpdir"), "netbird-cache-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        DiskCacheTest.delete(directory);
+    }
+
+    @Test
+    public void storesHeadersAndBodyInOneFile() throws IOException {
+        NetBird bird = newBird();
+        Assert.assertEquals("hello", bird.newCall(newRequest()).execute().responseBody().string());
+        Assert.assertEquals(1, entries().length);
+
+        Response cached = bird.newCall(newRequest()).execute();
+        Assert.assertEquals("hello", cached.responseBody().string());
+        Assert.assertEquals("text/plain; charset=utf-8", cached.header("Content-Type"));
+        Assert.assertEquals("5", cached.header("Content-Length"));
+        Assert.assertNotNull(cached.header(CacheControl.HEADER_NAME_CACHE_DATE));
+        Assert.assertEquals(1, server.accepted());
+    }
+
+    @Test
+    public void migratesEntriesOfTwoFiles() throws IOException {
+        Assert.assertEquals("hello", newBird().newCall(newRequest()).execute().responseBody().string());
+        File entry = entries()[0];
+        String key = entry.getName();
+        // rewrite it the way former versions stored it, without a journal
+        DiskCacheTest.writeFile(new File(cacheDir(), key + "_body"), "legacy");
+        DiskCacheTest.writeFile(new File(cacheDir(), key + "_header"),
+                "Content-Type:text/plain; charset=utf-8\nNetBird-Cache-Date:" + System.currentTimeMillis());
+        Assert.assertTrue(entry.delete());
+        Assert.assertTrue(new File(cacheDir(), "netbird.journal").delete());
+
+        NetBird bird = newBird();
+        Assert.assertEquals("legacy", bird.newCall(newRequest()).execute().responseBody().string());
+        Assert.assertFalse(new File(cacheDir(), key + "_body").exists());
+        Assert.assertFalse(new File(cacheDir(), key + "_header").exists());
+        Assert.assertTrue(new File(cacheDir(), key).isFile());
+
+        Response migrated = bird.newCall(newRequest()).execute();
+        Assert.assertEquals("legacy", migrated.responseBody().string());
+        Assert.assertEquals("text/plain; charset=utf-8", migrated.header("Content-Type"));
+        Assert.assertEquals(1, server.accepted());
+    }
+
+    @Test
+    public void streamsLargeBodyFromMapping() throws IOException {
+        NetBird bird = newBird();
+        Request request = new Request.Builder()
+                .path("blob/1")
+                .addHeader(CacheControl.HEADER_NAME_MAX_AGE, Long.toString(CacheControl.MAX_AGE_FOREVER))
+                .build();
+        Assert.assertEquals(1 << 20, bird.newCall(request).execute().responseBody().bytes().length);
+        for (int i = 0; i < 3; ++i) {
+            Response cached = bird.newCall(request).execute();
+            Assert.assertEquals(1 << 20, cached.responseBody().contentLength());
+            Assert.assertArrayEquals(new byte[1 << 20], cached.responseBody().bytes());
+        }
+        Assert.assertEquals(1, server.accepted());
+    }
+
+    @Test
+    public void servesHotResponsesFromMemory() throws IOException {
+        MemoryCache memory = new MemoryCache(64L * 1024L);
+        CacheInterceptor cache = CacheInterceptor.newCacheHeadInterceptor(
+                directory, 1024L * 1024L, memory, Collections.<String>emptyList());
+        Assert.assertNotNull(cache);
+        NetBird bird = new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform())
+                .addHeadInterceptor(cache)
+                .build();
+        Assert.assertEquals("hello", bird.newCall(newRequest()).execute().responseBody().string());
+        Assert.assertTrue(memory.size() > 5L);
+
+        // written through to the disk, but served from memory
+        File entry = entries()[0];
+        Assert.assertTrue(entry.delete());
+        Response cached = bird.newCall(newRequest()).execute();
+        Assert.assertEquals("hello", cached.responseBody().string());
+        Assert.assertNotNull(cached.header(CacheControl.HEADER_NAME_CACHE_DATE));
+        Assert.assertEquals(1, memory.hitCount());
+
+        cache.remove(newRequest());
+        Assert.assertEquals(0L, memory.size());
+        // neither tier has it, so it is fetched and written through again
+        Assert.assertEquals("hello", bird.newCall(newRequest()).execute().responseBody().string());
+        Assert.assertEquals(1, memory.hitCount());
+        Assert.assertTrue(memory.size() > 5L);
+        Assert.assertEquals(1, entries().length);
+    }
+
+    @Test
+    public void concurrentMissesWithoutContentLength() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        MemoryCache memory = new MemoryCache(64L * 1024L);
+        CacheInterceptor cache = CacheInterceptor.newCacheHeadInterceptor(
+                directory, 1024L * 1024L, memory, Collections.singletonList("n"));
+        Assert.assertNotNull(cache);
+        NetBird bird = new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform())
+                .addHeadInterceptor(cache)
+                .build();
+        // "feed" is chunked and pauses mid-body, so the second miss finds the entry being written
+        CompletableFuture<Response> first = Calls.submit(bird.newCall(newFeedRequest("1")));
+        CompletableFuture<Response> second = Calls.submit(bird.newCall(newFeedRequest("2")));
+        String feed = "[{\"id\":1,\"name\":\"css\"},{\"id\":2,\"name\":\"html\"},{\"id\":3,\"name\":\"js\"}]";
+        Assert.assertEquals(feed, first.get(5, TimeUnit.SECONDS).responseBody().string());
+        Assert.assertEquals(feed, second.get(5, TimeUnit.SECONDS).responseBody().string());
+        Assert.assertEquals(2, server.accepted());
+        Assert.assertEquals(1, entries().length);
+
+        // only the miss which wrote the entry put it into memory
+        Response cached = bird.newCall(newFeedRequest("3")).execute();
+        Assert.assertEquals(feed, cached.responseBody().string());
+        Assert.assertEquals(1, memory.hitCount());
+        Assert.assertEquals(2, server.accepted());
+    }
+
+    @Test
+    public void largeResponseReplacesSmallEntryInMemory() throws IOException {
+        MemoryCache memory = new MemoryCache(64L * 1024L);
+        // "hello" and "blob/1" share one key, the second is too large for the memory tier
+        CacheInterceptor cache = new CacheInterceptor(DiskCache.open(directory, 4L * 1024L * 1024L), memory, Collections.<String>emptyList()) {
+            @Override
+            protected String createStableKey(Request request) {
+                return "shared";
+            }
+        };
+        NetBird bird = new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform())
+                .addHeadInterceptor(cache)
+                .build();
+        Assert.assertEquals("hello", bird.newCall(newRequest()).execute().responseBody().string());
+        Assert.assertTrue(memory.size() > 5L);
+
+        Request blob = new Request.Builder().path("blob/1").build();
+        Assert.assertEquals(1 << 20, bird.newCall(blob).execute().responseBody().bytes().length);
+        Assert.assertEquals(0L, memory.size());
+
+        Response cached = bird.newCall(newRequest()).execute();
+        // served from the disk, not the former entry in memory
+        Assert.assertArrayEquals(new byte[1 << 20], cached.responseBody().bytes());
+    }
+
+    private NetBird newBird() {
+        CacheInterceptor cache = CacheInterceptor.newCacheHeadInterceptor(
+                directory, 1024L * 1024L, Collections.<String>emptyList());
+        Assert.assertNotNull(cache);
+        return new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform())
+                .addHeadInterceptor(cache)
+                .build();
+    }
+
+    private static Request newRequest() {
+        return new Request.Builder()
+                .path("hello")
+                .addHeader(CacheControl.HEADER_NAME_MAX_AGE, Long.toString(CacheControl.MAX_AGE_FOREVER))
+                .build();
+    }
+
+    private static Request newFeedRequest(String n) {
+        return new Request.Builder()
+                .path("feed")
+                .add("n", n)
+                .addHeader(CacheControl.HEADER_NAME_MAX_AGE, Long.toString(CacheControl.MAX_AGE_FOREVER))
+                .build();
+    }
+
+    private File cacheDir() {
+        return new File(directory, "diskCache");
+    }
+
+    private File[] entries() {
+        return cacheDir().listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().matches("[0-9a-f]{32}");
+            }
+        });
+    }
+}
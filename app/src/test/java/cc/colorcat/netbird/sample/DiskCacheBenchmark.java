@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cc.colorcat.netbird.cache.DiskCache;
+
+/**
+ * Opens a populated {@link DiskCache} from its journal and, with the journal removed, by listing
+ * and sorting the directory. The entry count defaults to 20000, pass {@code -Dnetbird.bench.entries=200000}
+ * for a larger run. Also measures the throughput of cache hits from a growing number of threads, and
+ * while another thread keeps the cache full so that every write evicts entries.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class DiskCacheBenchmark {
+    private static final int ROUNDS = 3;
+    private static final long MAX_SIZE = 1024L * 1024L * 1024L;
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(System.getProperty("java.io.tmpdir"), "netbird-disk-bench-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        DiskCacheTest.delete(directory);
+    }
+
+    @Test
+    public void compareJournalWithScan() throws IOException {
+        int entries = Integer.parseInt(System.getProperty("netbird.bench.entries", "20000"));
+        DiskCache cache = DiskCache.open(directory, MAX_SIZE);
+        for (int i = 0; i < entries; ++i) {
+            DiskCacheTest.write(cache, "k" + i, "entry " + i);
+        }
+        File journal = new File(new File(directory, "diskCache"), "netbird.journal");
+        long scan = Long.MAX_VALUE;
+        long replay = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; ++i) {
+            Assert.assertTrue(journal.delete());
+            long start = System.nanoTime();
+            DiskCache.open(directory, MAX_SIZE);
+            scan = Math.min(scan, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            DiskCache opened = DiskCache.open(directory, MAX_SIZE);
+            replay = Math.min(replay, System.nanoTime() - start);
+            Assert.assertEquals("entry 7", DiskCacheTest.read(opened, "k7"));
+        }
+        System.out.println(entries + " entries, open by scan: " + TimeUnit.NANOSECONDS.toMillis(scan)
+                + " ms, open by journal: " + TimeUnit.NANOSECONDS.toMillis(replay) + " ms");
+    }
+
+    @Test
+    public void measureParallelHits() throws Exception {
+        final DiskCache cache = DiskCache.open(directory, MAX_SIZE);
+        final int keys = 64;
+        for (int i = 0; i < keys; ++i) {
+            DiskCacheTest.write(cache, "k" + i, "entry " + i);
+        }
+        final int hits = Integer.parseInt(System.getProperty("netbird.bench.hits", "20000"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        StringBuilder result = new StringBuilder("parallel hits");
+        for (int threads = 1; threads <= Math.max(8, cores); threads <<= 1) {
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; ++round) {
+                best = Math.min(best, runHits(cache, threads, keys, hits));
+            }
+            long perSecond = (long) threads * hits * TimeUnit.SECONDS.toNanos(1) / Math.max(1L, best);
+            result.append(", ").append(threads).append(" threads: ").append(perSecond / 1000L).append("k/s");
+        }
+        System.out.println(result);
+    }
+
+    @Test
+    public void measureHitsDuringEviction() throws Exception {
+        final int keys = 64;
+        final DiskCache cache = DiskCache.open(directory, 256L * 1024L);
+        for (int i = 0; i < keys; ++i) {
+            DiskCacheTest.write(cache, "k" + i, "entry " + i);
+        }
+        final byte[] cold = new byte[16 * 1024];
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int n = 0; running.get(); ++n) {
+                        OutputStream output = cache.getSnapshot("c" + n).getOutputStream();
+                        output.write(cold);
+                        output.close();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        writer.start();
+        try {
+            final int hits = Integer.parseInt(System.getProperty("netbird.bench.hits", "20000"));
+            final int threads = 4;
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; ++round) {
+                best = Math.min(best, runHits(cache, threads, keys, hits));
+            }
+            long perSecond = (long) threads * hits * TimeUnit.SECONDS.toNanos(1) / Math.max(1L, best);
+            System.out.println("hits during eviction, " + threads + " threads: " + perSecond / 1000L + "k/s");
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    private static long runHits(final DiskCache cache, int threads, final int keys, final int hits) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final int offset = t;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    byte[] buffer = new byte[64];
+                    try {
+                        start.await();
+                        for (int i = 0; i < hits; ++i) {
+                            InputStream input = cache.getSnapshot("k" + ((i + offset) % keys)).getInputStream();
+                            // evicted meanwhile, a miss is as expensive to find
+                            if (input == null) continue;
+                            while (input.read(buffer) != -1) {
+                            }
+                            input.close();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        Assert.assertEquals(null, failure.get());
+        return elapsed;
+    }
+}
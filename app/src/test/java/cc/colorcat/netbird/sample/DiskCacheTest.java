@@ -0,0 +1,340 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cc.colorcat.netbird.cache.DiskCache;
+
+/**
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class DiskCacheTest {
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(System.getProperty("java.io.tmpdir"), "netbird-disk-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    @Test
+    public void reopensFromJournal() throws IOException {
+        DiskCache cache = DiskCache.open(directory, 1024L * 1024L);
+        write(cache, "a", "alpha");
+        write(cache, "b", "beta");
+        write(cache, "c", "gamma");
+        write(cache, "b", "beta2");
+        cache.getSnapshot("c").requireDelete();
+        Assert.assertTrue(new File(cacheDir(), "netbird.journal").isFile());
+
+        DiskCache reopened = DiskCache.open(directory, 1024L * 1024L);
+        Assert.assertEquals("alpha", read(reopened, "a"));
+        Assert.assertEquals("beta2", read(reopened, "b"));
+        Assert.assertEquals(null, read(reopened, "c"));
+    }
+
+    @Test
+    public void migratesDirectoryWithoutJournal() throws IOException {
+        File dir = cacheDir();
+        Assert.assertTrue(dir.mkdirs());
+        writeFile(new File(dir, "old"), "legacy");
+        writeFile(new File(dir, "half.tmp"), "interrupted");
+
+        DiskCache cache = DiskCache.open(directory, 1024L * 1024L);
+        Assert.assertEquals("legacy", read(cache, "old"));
+        Assert.assertFalse(new File(dir, "half.tmp").exists());
+        Assert.assertTrue(new File(dir, "netbird.journal").isFile());
+    }
+
+    @Test
+    public void recoversFromTornJournal() throws IOException {
+        DiskCache cache = DiskCache.open(directory, 1024L * 1024L);
+        write(cache, "a", "alpha");
+        OutputStream output = new FileOutputStream(new File(cacheDir(), "netbird.journal"), true);
+        output.write("CLEAN b 12".getBytes("US-ASCII"));
+        output.close();
+
+        DiskCache reopened = DiskCache.open(directory, 1024L * 1024L);
+        write(reopened, "c", "gamma");
+        DiskCache again = DiskCache.open(directory, 1024L * 1024L);
+        Assert.assertEquals("alpha", read(again, "a"));
+        Assert.assertEquals("gamma", read(again, "c"));
+    }
+
+    @Test
+    public void keepsLruOrderAcrossReopen() throws Exception {
+        DiskCache cache = DiskCache.open(directory, 30L);
+        write(cache, "a", "0123456789");
+        write(cache, "b", "0123456789");
+        write(cache, "c", "0123456789");
+        Assert.assertEquals("0123456789", read(cache, "a"));
+        // READ lines are not flushed on their own, the next write takes them along
+        write(cache, "x", "");
+
+        DiskCache reopened = DiskCache.open(directory, 30L);
+        write(reopened, "d", "0123456789");
+        File b = new File(cacheDir(), "b");
+        for (int i = 0; i < 100 && b.exists(); ++i) {
+            Thread.sleep(20L);
+        }
+        Assert.assertFalse(b.exists());
+        Assert.assertEquals("0123456789", read(reopened, "a"));
+        Assert.assertEquals("0123456789", read(reopened, "c"));
+    }
+
+    @Test
+    public void compactsJournalUnderReadsAlone() throws Exception {
+        DiskCache cache = DiskCache.open(directory, 1024L * 1024L);
+        String key = "0123456789abcdef0123456789abcdef";
+        write(cache, key, "alpha");
+        for (int i = 0; i < 5000; ++i) {
+            Assert.assertEquals("alpha", read(cache, key));
+        }
+        // every hit appends a line, compacting every 2000 or so keeps it short without a write
+        int lines = Integer.MAX_VALUE;
+        for (int i = 0; i < 100 && lines > 2500; ++i) {
+            Thread.sleep(20L);
+            lines = journalLines();
+        }
+        Assert.assertTrue(lines + " lines", lines <= 2500);
+        Assert.assertEquals("alpha", read(DiskCache.open(directory, 1024L * 1024L), key));
+    }
+
+    @Test
+    public void mappedStreamHoldsTheEntryUntilDrained() throws IOException {
+        DiskCache cache = DiskCache.open(directory, 1024L * 1024L);
+        write(cache, "m", "headerbody");
+        DiskCache.Snapshot snapshot = cache.getSnapshot("m");
+        InputStream input = snapshot.getMappedInputStream(6L);
+        Assert.assertEquals(4, input.available());
+
+        snapshot.requireDelete();
+        File file = new File(cacheDir(), "m");
+        Assert.assertTrue(file.exists());
+        byte[] body = new byte[4];
+        Assert.assertEquals(4, input.read(body));
+        Assert.assertEquals("body", new String(body, "UTF-8"));
+        // read to the end, the deferred delete has run without a close
+        Assert.assertFalse(file.exists());
+        Assert.assertEquals(-1, input.read());
+        input.close();
+        Assert.assertEquals(null, cache.getSnapshot("m").getMappedInputStream(0L));
+    }
+
+    @Test
+    public void closedMappedStreamReleasesTheEntry() throws IOException {
+        DiskCache cache = DiskCache.open(directory, 1024L * 1024L);
+        write(cache, "m", "content");
+        DiskCache.Snapshot snapshot = cache.getSnapshot("m");
+        InputStream input = snapshot.getMappedInputStream(0L);
+        Assert.assertEquals('c', input.read());
+        write(cache, "m", "replaced");
+        // the write is committed once the reader has gone
+        Assert.assertEquals("ontent", readAll(input, 6));
+        input.close();
+        Assert.assertEquals("replaced", read(cache, "m"));
+    }
+
+    @Test
+    public void keysAreReadWrittenAndEvictedConcurrently() throws Exception {
+        final DiskCache cache = DiskCache.open(directory, 2048L);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[4];
+        for (int t = 0; t < workers.length; ++t) {
+            final int seed = t;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 2000; ++i) {
+                            String key = "k" + ((i * 7 + seed) % 40);
+                            if (i % 3 == 0) {
+                                OutputStream output = cache.getSnapshot(key).getOutputStream();
+                                if (output != null) {
+                                    output.write((key + ":" + seed + ":" + i + "0123456789").getBytes("UTF-8"));
+                                    output.close();
+                                }
+                            } else if (i % 17 == 0) {
+                                cache.getSnapshot(key).requireDelete();
+                            } else {
+                                String content = read(cache, key);
+                                if (content != null && !content.startsWith(key + ":")) {
+                                    throw new AssertionError(key + " read " + content);
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Assert.assertEquals(null, failure.get());
+
+        // settle the last trim, then nothing but entries and the journal is left behind
+        write(cache, "x", "");
+        long total = Long.MAX_VALUE;
+        for (int i = 0; i < 100 && total > 2048L; ++i) {
+            Thread.sleep(20L);
+            total = entriesLength();
+        }
+        Assert.assertTrue("size " + total, total <= 2048L);
+        for (File file : cacheDir().listFiles()) {
+            String name = file.getName();
+            Assert.assertTrue(name, name.equals("netbird.journal") || name.matches("[a-z0-9_-]+"));
+        }
+        DiskCache reopened = DiskCache.open(directory, 2048L);
+        for (File file : cacheDir().listFiles()) {
+            String name = file.getName();
+            if (!name.equals("netbird.journal") && !name.equals("x")) {
+                Assert.assertTrue(name, read(reopened, name).startsWith(name + ":"));
+            }
+        }
+    }
+
+    @Test
+    public void evictedSnapshotHandsOverToTheLiveOne() throws Exception {
+        DiskCache cache = DiskCache.open(directory, 30L);
+        write(cache, "a", "0123456789");
+        DiskCache.Snapshot held = cache.getSnapshot("a");
+        write(cache, "b", "0123456789");
+        write(cache, "c", "0123456789");
+        write(cache, "d", "0123456789");
+        File a = new File(cacheDir(), "a");
+        for (int i = 0; i < 100 && a.exists(); ++i) {
+            Thread.sleep(20L);
+        }
+        Assert.assertFalse(a.exists());
+
+        DiskCache.Snapshot again = cache.getSnapshot("a");
+        OutputStream output = held.getOutputStream();
+        // both stand for the same entry, so there is one writer at a time
+        Assert.assertEquals(null, again.getOutputStream());
+        output.write("first-----".getBytes("UTF-8"));
+        output.close();
+        // "b" is evicted for it
+        for (int i = 0; i < 100 && entriesLength() > 30L; ++i) {
+            Thread.sleep(20L);
+        }
+        output = again.getOutputStream();
+        output.write("second----".getBytes("UTF-8"));
+        output.close();
+        // replaced in place and counted once, so nothing else has to go
+        Thread.sleep(200L);
+        Assert.assertEquals(30L, entriesLength());
+        Assert.assertTrue(new File(cacheDir(), "c").exists());
+        Assert.assertEquals("second----", read(cache, "a"));
+        Assert.assertEquals("second----", read(DiskCache.open(directory, 30L), "a"));
+    }
+
+    private int journalLines() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(new File(cacheDir(), "netbird.journal")));
+        try {
+            int count = 0;
+            while (reader.readLine() != null) {
+                ++count;
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private long entriesLength() {
+        long total = 0L;
+        for (File file : cacheDir().listFiles()) {
+            if (!file.getName().equals("netbird.journal")) total += file.length();
+        }
+        return total;
+    }
+
+    private static String readAll(InputStream input, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        for (int count = 0; count < length; ) {
+            count += input.read(bytes, count, length - count);
+        }
+        return new String(bytes, "UTF-8");
+    }
+
+    private File cacheDir() {
+        return new File(directory, "diskCache");
+    }
+
+    static void write(DiskCache cache, String key, String content) throws IOException {
+        OutputStream output = cache.getSnapshot(key).getOutputStream();
+        output.write(content.getBytes("UTF-8"));
+        output.close();
+    }
+
+    static String read(DiskCache cache, String key) throws IOException {
+        InputStream input = cache.getSnapshot(key).getInputStream();
+        if (input == null) return null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (int b = input.read(); b != -1; b = input.read()) {
+                bytes.write(b);
+            }
+            return bytes.toString("UTF-8");
+        } finally {
+            input.close();
+        }
+    }
+
+    static void writeFile(File file, String content) throws IOException {
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cc.colorcat.netbird.Call;
+import cc.colorcat.netbird.Callback;
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.Request;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.StateIOException;
+
+/**
+ * Enqueues the same number of asynchronous calls from several producer threads
+ * and compares the default dispatcher with the lock-free one.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class DispatcherBenchmark {
+    private static final int PRODUCERS = 8;
+    private static final int CALLS_PER_PRODUCER = 2000;
+    private static final int MAX_RUNNING = 64;
+
+    @Test
+    public void compareDispatchers() throws InterruptedException {
+        // warm up both paths before measuring
+        run(false);
+        run(true);
+
+        long locked = run(false);
+        long lockFree = run(true);
+        System.out.println("locked dispatcher: " + TimeUnit.NANOSECONDS.toMillis(locked) + " ms");
+        System.out.println("lock-free dispatcher: " + TimeUnit.NANOSECONDS.toMillis(lockFree) + " ms");
+    }
+
+    private static long run(boolean lockFree) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(MAX_RUNNING);
+        final NetBird bird = new NetBird.Builder("http://localhost/")
+                .platform(new GenericPlatform())
+                .connection(new MemoryConnection("{}".getBytes(), 0L))
+                .executor(workers)
+                .maxRunning(MAX_RUNNING)
+                .lockFreeDispatcher(lockFree)
+                .build();
+        final int total = PRODUCERS * CALLS_PER_PRODUCER;
+        final CountDownLatch finished = new CountDownLatch(total);
+        final AtomicInteger failed = new AtomicInteger(0);
+        final Callback callback = new Callback() {
+            @Override
+            public void onStart() {
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                response.responseBody().close();
+            }
+
+            @Override
+            public void onFailure(Call call, StateIOException cause) {
+                failed.incrementAndGet();
+            }
+
+            @Override
+            public void onFinish() {
+                finished.countDown();
+            }
+        };
+
+        final CountDownLatch go = new CountDownLatch(1);
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int i = 0; i < PRODUCERS; ++i) {
+            producers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < CALLS_PER_PRODUCER; ++j) {
+                        Request request = new Request.Builder().path("bench").build();
+                        bird.newCall(request).enqueue(callback);
+                    }
+                }
+            });
+            producers[i].start();
+        }
+
+        long start = System.nanoTime();
+        go.countDown();
+        Assert.assertTrue(finished.await(2, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - start;
+        workers.shutdownNow();
+        Assert.assertEquals(0, failed.get());
+        return elapsed;
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cc.colorcat.netbird.Backpressure;
+import cc.colorcat.netbird.Call;
+import cc.colorcat.netbird.Callback;
+import cc.colorcat.netbird.Connection;
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.Headers;
+import cc.colorcat.netbird.HttpStatus;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.Priority;
+import cc.colorcat.netbird.Request;
+import cc.colorcat.netbird.RequestBody;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.ResponseBody;
+import cc.colorcat.netbird.StateIOException;
+
+/**
+ * Holds every call in {@link Connection#connect(NetBird, Request)} until it is
+ * released, so the order and the concurrency in which the dispatcher promotes calls can be observed.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class DispatcherTest {
+    private ExecutorService executor;
+    private Gate gate;
+    private Recorder recorder;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        gate = new Gate();
+        recorder = new Recorder();
+    }
+
+    @After
+    public void tearDown() {
+        gate.release(1000);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void limitsRunningCallsPerHost() throws Exception {
+        NetBird bird = newBuilder().maxRunning(4).maxRunningPerHost(1).build();
+        enqueue(bird, "a.test", "a1", Priority.NORMAL);
+        enqueue(bird, "a.test", "a2", Priority.NORMAL);
+        enqueue(bird, "a.test", "a3", Priority.NORMAL);
+        enqueue(bird, "b.test", "b1", Priority.NORMAL);
+
+        gate.awaitStarted(2);
+        Thread.sleep(100L);
+        // the slots left are not handed to a.test
+        Assert.assertEquals(Arrays.asList("a1", "b1"), gate.started());
+        Assert.assertEquals(2, bird.runningCalls());
+        Assert.assertEquals(2, bird.waitingCalls());
+
+        gate.release(4);
+        recorder.awaitFinished(4);
+        Assert.assertEquals(1, gate.maxRunning("a.test"));
+        Assert.assertEquals(Arrays.asList("a1", "b1", "a2", "a3"), gate.started());
+    }
+
+    @Test
+    public void agedLowCallOvertakesNewerHighCalls() throws Exception {
+        NetBird bird = newBuilder().maxRunning(1).priorityAging(50L).build();
+        enqueue(bird, "a.test", "blocker", Priority.NORMAL);
+        gate.awaitStarted(1);
+        enqueue(bird, "a.test", "low", Priority.LOW);
+        // four aging periods lift LOW above HIGH
+        Thread.sleep(200L);
+        enqueue(bird, "a.test", "high1", Priority.HIGH);
+        enqueue(bird, "a.test", "high2", Priority.HIGH);
+        enqueue(bird, "a.test", "normal", Priority.NORMAL);
+
+        gate.release(5);
+        recorder.awaitFinished(5);
+        Assert.assertEquals(Arrays.asList("blocker", "low", "high1", "high2", "normal"), gate.started());
+    }
+
+    @Test
+    public void freshLowCallWaitsBehindHighCalls() throws Exception {
+        NetBird bird = newBuilder().maxRunning(1).priorityAging(60000L).build();
+        enqueue(bird, "a.test", "blocker", Priority.NORMAL);
+        gate.awaitStarted(1);
+        enqueue(bird, "a.test", "low", Priority.LOW);
+        enqueue(bird, "a.test", "high", Priority.HIGH);
+
+        gate.release(3);
+        recorder.awaitFinished(3);
+        Assert.assertEquals(Arrays.asList("blocker", "high", "low"), gate.started());
+    }
+
+    @Test
+    public void failFastRejectsBeyondMaxWaiting() throws Exception {
+        NetBird bird = newBuilder().maxRunning(1).maxWaiting(1).backpressure(Backpressure.FAIL_FAST).build();
+        enqueue(bird, "a.test", "running", Priority.NORMAL);
+        gate.awaitStarted(1);
+        enqueue(bird, "a.test", "waiting", Priority.NORMAL);
+        enqueue(bird, "a.test", "rejected", Priority.HIGH);
+
+        recorder.awaitFinished(1);
+        Assert.assertEquals(Arrays.asList("rejected"), recorder.failed());
+        Assert.assertEquals(Arrays.asList(HttpStatus.CODE_TOO_MANY_REQUESTS), recorder.states());
+        Assert.assertEquals(1L, bird.rejectedCalls());
+        Assert.assertEquals(1, bird.waitingCalls());
+
+        gate.release(2);
+        recorder.awaitFinished(2);
+        Assert.assertEquals(Arrays.asList("running", "waiting"), gate.started());
+    }
+
+    @Test
+    public void blockUnblocksWhenASlotFrees() throws Exception {
+        final NetBird bird = newBuilder().maxRunning(1).maxWaiting(1).backpressure(Backpressure.BLOCK).build();
+        enqueue(bird, "a.test", "running", Priority.NORMAL);
+        gate.awaitStarted(1);
+        enqueue(bird, "a.test", "waiting", Priority.NORMAL);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                enqueue(bird, "a.test", "blocked", Priority.NORMAL);
+            }
+        };
+        producer.start();
+        producer.join(200L);
+        Assert.assertTrue(producer.isAlive());
+        Assert.assertEquals(1L, bird.blockedCalls());
+
+        // "running" finishes, "waiting" is promoted and its waiting slot goes to "blocked"
+        gate.release(1);
+        producer.join(5000L);
+        Assert.assertFalse(producer.isAlive());
+        gate.release(2);
+        recorder.awaitFinished(3);
+        Assert.assertEquals(Arrays.asList("running", "waiting", "blocked"), gate.started());
+        Assert.assertEquals(0L, bird.rejectedCalls());
+        Assert.assertTrue(recorder.failed().isEmpty());
+    }
+
+    @Test
+    public void shedByPriorityFailsTheLowestWaitingCall() throws Exception {
+        NetBird bird = newBuilder().maxRunning(1).maxWaiting(2).backpressure(Backpressure.SHED_BY_PRIORITY).build();
+        enqueue(bird, "a.test", "running", Priority.NORMAL);
+        gate.awaitStarted(1);
+        enqueue(bird, "a.test", "low", Priority.LOW);
+        enqueue(bird, "a.test", "normal", Priority.NORMAL);
+        enqueue(bird, "a.test", "high", Priority.HIGH);
+
+        recorder.awaitFinished(1);
+        Assert.assertEquals(Arrays.asList("low"), recorder.failed());
+        Assert.assertEquals(Arrays.asList(HttpStatus.CODE_TOO_MANY_REQUESTS), recorder.states());
+        Assert.assertEquals(1L, bird.shedCalls());
+        Assert.assertEquals(0, bird.waitingCalls(Priority.LOW));
+        Assert.assertEquals(2, bird.waitingCalls());
+
+        gate.release(3);
+        recorder.awaitFinished(3);
+        Assert.assertEquals(Arrays.asList("running", "high", "normal"), gate.started());
+    }
+
+    @Test
+    public void rejectedCallIsFailedOutsideTheDispatcherLock() throws Exception {
+        ExecutorService stopped = Executors.newSingleThreadExecutor();
+        stopped.shutdown();
+        final NetBird bird = newBuilder().executor(stopped).build();
+        final AtomicBoolean unlocked = new AtomicBoolean(false);
+        final Callback recorded = recorder.callback("rejected");
+        Request request = new Request.Builder().url("http://a.test/rejected").build();
+        bird.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onStart() {
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                recorded.onResponse(call, response);
+            }
+
+            @Override
+            public void onFailure(Call call, StateIOException cause) {
+                // a callback which retries needs the dispatcher, possibly from another thread
+                Thread other = new Thread() {
+                    @Override
+                    public void run() {
+                        bird.cancelWaiting("none");
+                    }
+                };
+                other.start();
+                try {
+                    other.join(1000L);
+                } catch (InterruptedException ignore) {
+                }
+                unlocked.set(!other.isAlive());
+                recorded.onFailure(call, cause);
+            }
+
+            @Override
+            public void onFinish() {
+                recorded.onFinish();
+            }
+        });
+
+        recorder.awaitFinished(1);
+        Assert.assertEquals(Arrays.asList(HttpStatus.CODE_TOO_MANY_REQUESTS), recorder.states());
+        Assert.assertTrue("the dispatcher was locked during the callback", unlocked.get());
+    }
+
+    private NetBird.Builder newBuilder() {
+        return new NetBird.Builder("http://localhost/")
+                .platform(new GenericPlatform())
+                .connection(new GatedConnection(gate))
+                .executor(executor);
+    }
+
+    private void enqueue(NetBird bird, String host, String name, Priority priority) {
+        Request request = new Request.Builder().url("http://" + host + "/" + name).priority(priority).build();
+        bird.newCall(request).enqueue(recorder.callback(name));
+    }
+
+    /**
+     * The calls blocked in connect(), shared by all the clones of a {@link GatedConnection}.
+     */
+    private static class Gate {
+        private final Semaphore permits = new Semaphore(0);
+        private final List<String> started = new ArrayList<>();
+        private final Map<String, Integer> running = new HashMap<>();
+        private final Map<String, Integer> maxRunning = new HashMap<>();
+
+        void enter(String host, String name) throws IOException {
+            synchronized (this) {
+                started.add(name);
+                int count = count(running, host) + 1;
+                running.put(host, count);
+                maxRunning.put(host, Math.max(count, count(maxRunning, host)));
+                notifyAll();
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                synchronized (this) {
+                    running.put(host, count(running, host) - 1);
+                }
+            }
+        }
+
+        void release(int count) {
+            permits.release(count);
+        }
+
+        synchronized void awaitStarted(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (started.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100L);
+            }
+            Assert.assertTrue("started " + started, started.size() >= count);
+        }
+
+        synchronized List<String> started() {
+            return new ArrayList<>(started);
+        }
+
+        synchronized int maxRunning(String host) {
+            return count(maxRunning, host);
+        }
+
+        private static int count(Map<String, Integer> counts, String host) {
+            Integer count = counts.get(host);
+            return count != null ? count : 0;
+        }
+    }
+
+    private static class Recorder {
+        private final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+        private final List<Integer> states = Collections.synchronizedList(new ArrayList<Integer>());
+        private final Semaphore finished = new Semaphore(0);
+
+        Callback callback(final String name) {
+            return new Callback() {
+                @Override
+                public void onStart() {
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    response.responseBody().close();
+                }
+
+                @Override
+                public void onFailure(Call call, StateIOException cause) {
+                    failed.add(name);
+                    states.add(cause.state());
+                }
+
+                @Override
+                public void onFinish() {
+                    finished.release();
+                }
+            };
+        }
+
+        List<String> failed() {
+            synchronized (failed) {
+                return new ArrayList<>(failed);
+            }
+        }
+
+        List<Integer> states() {
+            synchronized (states) {
+                return new ArrayList<>(states);
+            }
+        }
+
+        void awaitFinished(int count) throws InterruptedException {
+            Assert.assertTrue("finished", finished.tryAcquire(count, 5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static class GatedConnection implements Connection {
+        private final Gate gate;
+
+        private GatedConnection(Gate gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void connect(NetBird netBird, Request request) throws IOException {
+            URI uri = URI.create(request.url());
+            gate.enter(uri.getHost(), uri.getPath().substring(1));
+        }
+
+        @Override
+        public void writeHeaders(Headers headers) {
+        }
+
+        @Override
+        public void writeRequestBody(RequestBody requestBody) {
+        }
+
+        @Override
+        public int responseCode() {
+            return 200;
+        }
+
+        @Override
+        public String responseMsg() {
+            return "OK";
+        }
+
+        @Override
+        public Headers responseHeaders() {
+            return Headers.ofWithIgnoreNull(Collections.<String, List<String>>emptyMap());
+        }
+
+        @Override
+        public ResponseBody responseBody(Headers headers) {
+            return ResponseBody.create(new byte[0], "text/plain");
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        @Override
+        public GatedConnection clone() {
+            return new GatedConnection(gate);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
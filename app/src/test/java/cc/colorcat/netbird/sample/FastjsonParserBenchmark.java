@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.TypeReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cc.colorcat.netbird.NetworkData;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.ResponseBody;
+import cc.colorcat.parser.fastjson.FastjsonParser;
+
+/**
+ * Parses the same large payload with {@link FastjsonParser}, which decodes the body into a String
+ * first, and with fastjson's {@link JSONReader} over the body's reader, reporting wall time and the
+ * bytes allocated by the parsing thread. With fastjson 1.1.70.android the reader fills its buffer
+ * with the whole input as well, so it saves no memory and the parser keeps the String path.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class FastjsonParserBenchmark {
+    private static final int COURSES = 100000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void compareParserWithJsonReader() throws IOException {
+        byte[] payload = createPayload();
+        System.out.println("payload: " + (payload.length >> 10) + " KiB");
+        long[] parser = {Long.MAX_VALUE, Long.MAX_VALUE};
+        long[] reader = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int i = 0; i < ROUNDS; ++i) {
+            measure(payload, false, parser);
+            measure(payload, true, reader);
+        }
+        print("FastjsonParser", parser);
+        print("JSONReader", reader);
+    }
+
+    private static void measure(byte[] payload, boolean jsonReader, long[] best) throws IOException {
+        Response response = new Response.Builder()
+                .responseCode(200)
+                .responseMsg("OK")
+                .responseBody(ResponseBody.create(new ByteArrayInputStream(payload), "application/json", payload.length, Charset.forName("UTF-8")))
+                .build();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        List<Course> courses = jsonReader ? read(response) : parse(response);
+        long elapsed = System.nanoTime() - start;
+        allocated = allocated == -1L ? -1L : allocatedBytes() - allocated;
+        Assert.assertEquals(COURSES, courses.size());
+        best[0] = Math.min(best[0], elapsed);
+        best[1] = Math.min(best[1], allocated);
+    }
+
+    private static List<Course> parse(Response response) throws IOException {
+        FastjsonParser<List<Course>> parser = new FastjsonParser<List<Course>>() {
+        };
+        NetworkData<? extends List<Course>> data = parser.parse(response);
+        Assert.assertTrue(data.isSuccess);
+        return data.data;
+    }
+
+    private static List<Course> read(Response response) {
+        JSONReader reader = new JSONReader(response.responseBody().reader());
+        try {
+            return reader.readObject(new TypeReference<List<Course>>() {
+            }.getType());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void print(String mode, long[] best) {
+        System.out.println(mode + ": " + TimeUnit.NANOSECONDS.toMillis(best[0]) + " ms, "
+                + (best[1] == -1L ? "n/a" : (best[1] >> 20) + " MiB") + " allocated");
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, -1 if the VM can't tell.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1L;
+    }
+
+    private static byte[] createPayload() {
+        StringBuilder builder = new StringBuilder(COURSES * 160).append('[');
+        for (int i = 0; i < COURSES; ++i) {
+            if (i > 0) builder.append(',');
+            builder.append("{\"id\":").append(i)
+                    .append(",\"name\":\"course ").append(i)
+                    .append("\",\"picSmall\":\"http://img.example.com/s/").append(i)
+                    .append(".png\",\"picBig\":\"http://img.example.com/b/").append(i)
+                    .append(".png\",\"description\":\"description of course ").append(i)
+                    .append("\",\"learner\":").append(i * 7)
+                    .append('}');
+        }
+        return builder.append(']').toString().getBytes(Charset.forName("UTF-8"));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import cc.colorcat.netbird.NetworkData;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.ResponseBody;
+import cc.colorcat.netbird.StateIOException;
+import cc.colorcat.parser.fastjson.FastjsonParser;
+
+/**
+ * How {@link FastjsonParser} reports valid, empty, malformed and trailing-garbage bodies.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class FastjsonParserTest {
+    private static final String COURSES = "[{\"id\":1,\"name\":\"css\",\"learner\":12},{\"id\":2,\"name\":\"html\",\"learner\":7}]";
+
+    @Test
+    public void parsesValidBody() throws IOException {
+        NetworkData<? extends List<Course>> data = parse(COURSES);
+        Assert.assertTrue(data.isSuccess);
+        Assert.assertEquals(2, data.data.size());
+        Assert.assertEquals("html", data.data.get(1).getName());
+        Assert.assertEquals(7, data.data.get(1).getLearner());
+    }
+
+    @Test
+    public void rejectsEmptyBody() {
+        assertRejected("");
+    }
+
+    @Test
+    public void rejectsMalformedBody() {
+        assertRejected("[{\"id\":1,\"name\":");
+    }
+
+    @Test
+    public void rejectsTrailingData() {
+        assertRejected(COURSES + " trailing");
+        assertRejected(COURSES + " true");
+    }
+
+    private static void assertRejected(String body) {
+        try {
+            parse(body);
+            Assert.assertTrue("accepted: " + body, false);
+        } catch (IOException e) {
+            Assert.assertTrue(e instanceof StateIOException);
+            Assert.assertEquals(200, ((StateIOException) e).state());
+        }
+    }
+
+    private static NetworkData<? extends List<Course>> parse(String body) throws IOException {
+        FastjsonParser<List<Course>> parser = new FastjsonParser<List<Course>>() {
+        };
+        byte[] bytes = body.getBytes(Charset.forName("UTF-8"));
+        Response response = new Response.Builder()
+                .responseCode(200)
+                .responseMsg("OK")
+                .responseBody(ResponseBody.create(new ByteArrayInputStream(bytes), "application/json", bytes.length, Charset.forName("UTF-8")))
+                .build();
+        return parser.parse(response);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import cc.colorcat.netbird.FileParser;
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.MRequest;
+import cc.colorcat.netbird.NetBird;
+
+/**
+ * Downloads a large body from the loopback server with {@link FileParser} copying through buffered
+ * streams and through {@link java.nio.channels.FileChannel#transferFrom}. The size defaults to 256 MiB,
+ * pass {@code -Dnetbird.bench.mib=4096} for a multi-GB run.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class FileParserBenchmark {
+    private static final int ROUNDS = 3;
+
+    private LoopbackServer server;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackServer();
+        server.start();
+        file = new File(System.getProperty("java.io.tmpdir"), "netbird-bench-" + System.nanoTime() + ".bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        file.delete();
+    }
+
+    @Test
+    public void compareStreamWithChannel() throws IOException {
+        long mib = Long.parseLong(System.getProperty("netbird.bench.mib", "256"));
+        NetBird bird = new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform())
+                .enableGzip(false)
+                .build();
+        long stream = Long.MAX_VALUE;
+        long channel = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; ++i) {
+            stream = Math.min(stream, download(bird, mib, false));
+            channel = Math.min(channel, download(bird, mib, true));
+        }
+        System.out.println(mib + " MiB, stream: " + throughput(mib, stream) + " MiB/s, channel: " + throughput(mib, channel) + " MiB/s");
+    }
+
+    private long download(NetBird bird, long mib, boolean transferChannel) throws IOException {
+        FileParser parser = new FileParser.Builder(file).transferChannel(transferChannel).build();
+        MRequest<File> request = new MRequest.Builder<>(parser).path("blob/" + mib).build();
+        long start = System.nanoTime();
+        File result = bird.execute(request);
+        long elapsed = System.nanoTime() - start;
+        Assert.assertEquals(mib << 20, result.length());
+        return elapsed;
+    }
+
+    private static long throughput(long mib, long nanos) {
+        return mib * TimeUnit.SECONDS.toNanos(1) / Math.max(1L, nanos);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import cc.colorcat.netbird.FileParser;
+import cc.colorcat.netbird.NetworkData;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.ResponseBody;
+
+/**
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class FileParserTest {
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() {
+        dir = new File(System.getProperty("java.io.tmpdir"), "netbird-file-" + System.nanoTime());
+        file = new File(dir, "saved.txt");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void writesThroughChannelAndStream() throws IOException {
+        for (boolean transferChannel : new boolean[]{true, false}) {
+            FileParser parser = new FileParser.Builder(file).transferChannel(transferChannel).sync(true).build();
+            NetworkData<? extends File> data = parser.parse(newResponse(new ByteArrayInputStream("netbird".getBytes("UTF-8"))));
+            Assert.assertTrue(data.isSuccess);
+            Assert.assertEquals(7L, data.data.length());
+        }
+    }
+
+    @Test
+    public void atomicRenameKeepsOldFileOnFailure() throws IOException {
+        Assert.assertTrue(dir.mkdirs());
+        FileOutputStream output = new FileOutputStream(file);
+        output.write("old".getBytes("UTF-8"));
+        output.close();
+        FileParser parser = new FileParser.Builder(file).atomicRename(true).build();
+        InputStream broken = new InputStream() {
+            private int count = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (++count > 3) throw new IOException("connection reset");
+                return 'x';
+            }
+        };
+        try {
+            parser.parse(newResponse(broken));
+            Assert.assertTrue("expected an IOException", false);
+        } catch (IOException expected) {
+            // expected
+        }
+        Assert.assertEquals(3L, file.length());
+        Assert.assertEquals(1, dir.listFiles().length);
+
+        Assert.assertTrue(parser.parse(newResponse(new ByteArrayInputStream("newer".getBytes("UTF-8")))).isSuccess);
+        Assert.assertEquals(5L, file.length());
+        Assert.assertEquals(1, dir.listFiles().length);
+    }
+
+    private static Response newResponse(InputStream input) {
+        return new Response.Builder()
+                .responseCode(200)
+                .responseMsg("OK")
+                .responseBody(ResponseBody.create(input, "text/plain", -1L))
+                .build();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.Http2Connection;
+import cc.colorcat.netbird.Interceptor;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.Request;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.cache.CacheControl;
+import cc.colorcat.netbird.cache.CacheInterceptor;
+
+/**
+ * Runs {@link Http2Connection} through the regular interceptor chain. The loopback server only
+ * speaks HTTP/1.1, so the client falls back to it after offering h2c, which exercises the same
+ * code path as a negotiated HTTP/2 stream from NetBird's point of view.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class Http2ConnectionTest {
+    private LoopbackServer server;
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackServer();
+        server.start();
+        cacheDir = new File(System.getProperty("java.io.tmpdir"), "netbird-http2-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDir.delete();
+    }
+
+    @Test
+    public void fallsBackWhenUnsupported() {
+        NetBird bird = newBuilder().http2(true).build();
+        Assert.assertEquals(Http2Connection.isSupported(), bird.http2());
+        Assert.assertFalse(newBuilder().http2(true).http2(false).build().http2());
+    }
+
+    @Test
+    public void runsTransparentGzipAndTailInterceptors() throws IOException {
+        if (!Http2Connection.isSupported()) return;
+        final AtomicInteger tailCalls = new AtomicInteger(0);
+        NetBird bird = newBuilder()
+                .http2(true)
+                .enableGzip(true)
+                .addTailInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        tailCalls.incrementAndGet();
+                        return chain.proceed(chain.request());
+                    }
+                })
+                .build();
+        Assert.assertTrue(bird.http2());
+        Response response = bird.newCall(new Request.Builder().path("gzip").build()).execute();
+        Assert.assertEquals(200, response.responseCode());
+        Assert.assertEquals(null, response.header("Content-Encoding"));
+        Assert.assertEquals("hello gzip", response.responseBody().string());
+
+        Request echo = new Request.Builder().path("echo").post().add("name", "netbird").build();
+        Assert.assertEquals("name=netbird", bird.newCall(echo).execute().responseBody().string());
+        Assert.assertEquals(2, tailCalls.get());
+    }
+
+    @Test
+    public void servesFromCacheInterceptor() throws IOException {
+        if (!Http2Connection.isSupported()) return;
+        CacheInterceptor cache = CacheInterceptor.newCacheHeadInterceptor(
+                cacheDir, 1024L * 1024L, Collections.<String>emptyList());
+        Assert.assertNotNull(cache);
+        NetBird bird = newBuilder().http2(true).addHeadInterceptor(cache).build();
+        Request request = new Request.Builder()
+                .path("hello")
+                .addHeader(CacheControl.HEADER_NAME_MAX_AGE, Long.toString(CacheControl.MAX_AGE_FOREVER))
+                .build();
+        Assert.assertEquals("hello", bird.newCall(request).execute().responseBody().string());
+        Assert.assertEquals("hello", bird.newCall(request).execute().responseBody().string());
+        Assert.assertEquals(1, server.accepted());
+    }
+
+    private NetBird.Builder newBuilder() {
+        return new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.Interceptor;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.Request;
+import cc.colorcat.netbird.Response;
+
+/**
+ * Executes synchronous calls over an in-memory connection through a chain of
+ * pass-through interceptors to measure the per-call overhead of the chain.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class InterceptorChainBenchmark {
+    private static final int INTERCEPTORS = 4;
+    private static final int ROUNDS = 5;
+    private static final int CALLS = 200000;
+
+    @Test
+    public void measureChainOverhead() throws IOException {
+        NetBird bare = newNetBird(0);
+        NetBird chained = newNetBird(INTERCEPTORS);
+        Request request = new Request.Builder().path("bench").build();
+
+        // alternate both paths and keep the best round, the first ones only warm up the JIT
+        long base = Long.MAX_VALUE, total = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; ++i) {
+            base = Math.min(base, run(bare, request, CALLS) / CALLS);
+            total = Math.min(total, run(chained, request, CALLS) / CALLS);
+        }
+        System.out.println("interceptor chain: " + base + " ns/call without extra interceptors, "
+                + total + " ns/call with " + (INTERCEPTORS * 2) + ", "
+                + ((total - base) / (INTERCEPTORS * 2)) + " ns/hop");
+    }
+
+    private static NetBird newNetBird(int interceptors) {
+        NetBird.Builder builder = new NetBird.Builder("http://localhost/")
+                .platform(new GenericPlatform())
+                .connection(new MemoryConnection("{}".getBytes(), 0L));
+        for (int i = 0; i < interceptors; ++i) {
+            builder.addHeadInterceptor(new PassThrough()).addTailInterceptor(new PassThrough());
+        }
+        return builder.build();
+    }
+
+    private static long run(NetBird bird, Request request, int calls) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; ++i) {
+            Response response = bird.newCall(request).execute();
+            response.responseBody().close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static class PassThrough implements Interceptor {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            Response response = chain.proceed(request);
+            // the chain is shared by every hop, it must hand back this hop's request
+            Assert.assertSame(request, chain.request());
+            return response;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cc.colorcat.netbird.NetworkData;
+import cc.colorcat.netbird.Parser;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.ResponseBody;
+import cc.colorcat.parser.jackson.JacksonParser;
+
+/**
+ * Parses {@link Course} lists, bare and wrapped in a {@link Result}, with {@link JacksonParser}
+ * reading raw UTF-8 bytes and reading through a decoding {@link java.io.Reader}.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class JacksonParserBenchmark {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int COURSES = 20000;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void compareBytesWithReader() throws IOException {
+        String courses = createCourses();
+        compare("List<Course>", courses.getBytes(UTF8), new JacksonParser<List<Course>>(false) {
+        }, new JacksonParser<List<Course>>(true) {
+        });
+        String result = "{\"status\":1,\"msg\":\"ok\",\"data\":" + courses + "}";
+        compare("Result<List<Course>>", result.getBytes(UTF8), new JacksonParser<Result<List<Course>>>(false) {
+        }, new JacksonParser<Result<List<Course>>>(true) {
+        });
+    }
+
+    private static void compare(String name, byte[] payload, Parser<?> readerParser, Parser<?> bytesParser) throws IOException {
+        long reader = Long.MAX_VALUE;
+        long bytes = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; ++i) {
+            reader = Math.min(reader, measure(readerParser, payload));
+            bytes = Math.min(bytes, measure(bytesParser, payload));
+        }
+        System.out.println(name + " (" + (payload.length >> 10) + " KiB): reader "
+                + TimeUnit.NANOSECONDS.toMicros(reader) + " us, bytes " + TimeUnit.NANOSECONDS.toMicros(bytes) + " us");
+    }
+
+    private static long measure(Parser<?> parser, byte[] payload) throws IOException {
+        Response response = new Response.Builder()
+                .responseCode(200)
+                .responseMsg("OK")
+                .responseBody(ResponseBody.create(payload, "application/json", UTF8))
+                .build();
+        long start = System.nanoTime();
+        NetworkData<?> data = parser.parse(response);
+        long elapsed = System.nanoTime() - start;
+        Assert.assertTrue(data.isSuccess);
+        return elapsed;
+    }
+
+    private static String createCourses() {
+        StringBuilder builder = new StringBuilder(COURSES * 200).append('[');
+        for (int i = 0; i < COURSES; ++i) {
+            if (i > 0) builder.append(',');
+            builder.append("{\"id\":").append(i)
+                    .append(",\"name\":\"CSS 入门 ").append(i)
+                    .append("\",\"picSmall\":\"http://img.example.com/s/").append(i)
+                    .append(".png\",\"picBig\":\"http://img.example.com/b/").append(i)
+                    .append(".png\",\"description\":\"层叠样式表 course ").append(i)
+                    .append("\",\"learner\":").append(i * 7)
+                    .append('}');
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import com.google.gson.GsonBuilder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import cc.colorcat.netbird.JsonParser;
+import cc.colorcat.netbird.NetworkData;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.ResponseBody;
+import cc.colorcat.parser.gson.GsonParser;
+import cc.colorcat.parser.jackson.JacksonParser;
+
+/**
+ * Checks that the parsers keep their results while reusing the cached type, adapters and readers.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class JsonParserTest {
+    private static final String COURSES = "[{\"id\":1,\"name\":\"css\",\"learner\":12},{\"id\":2,\"name\":\"html\",\"learner\":7}]";
+
+    @Test
+    public void resolvesTypeOncePerClass() {
+        TypeProbe<List<Course>> first = new CourseProbe();
+        TypeProbe<List<Course>> second = new CourseProbe();
+        Assert.assertSame(first.type(), second.type());
+        Assert.assertEquals("java.util.List<cc.colorcat.netbird.sample.Course>", first.type().toString());
+    }
+
+    @Test
+    public void gsonParsesRepeatedly() throws IOException {
+        GsonParser<List<Course>> parser = new GsonParser<List<Course>>() {
+        };
+        for (int i = 0; i < 3; ++i) {
+            assertCourses(parser.parse(newResponse(COURSES)));
+        }
+        GsonParser.setGson(new GsonBuilder().create());
+        assertCourses(parser.parse(newResponse(COURSES)));
+        Assert.assertFalse(parser.parse(newResponse("")).isSuccess);
+    }
+
+    @Test
+    public void jacksonParsesRepeatedly() throws IOException {
+        JacksonParser<List<Course>> parser = new JacksonParser<List<Course>>() {
+        };
+        for (int i = 0; i < 3; ++i) {
+            assertCourses(parser.parse(newResponse(COURSES)));
+        }
+    }
+
+    @Test
+    public void jacksonParsesThroughReaderToo() throws IOException {
+        JacksonParser<List<Course>> parser = new JacksonParser<List<Course>>(false) {
+        };
+        assertCourses(parser.parse(newResponse(COURSES)));
+    }
+
+    private static void assertCourses(NetworkData<? extends List<Course>> data) {
+        Assert.assertTrue(data.isSuccess);
+        Assert.assertEquals(2, data.data.size());
+        Assert.assertEquals("html", data.data.get(1).getName());
+        Assert.assertEquals(7, data.data.get(1).getLearner());
+    }
+
+    private static Response newResponse(String content) {
+        return new Response.Builder()
+                .responseCode(200)
+                .responseMsg("OK")
+                .responseBody(ResponseBody.create(content, "application/json"))
+                .build();
+    }
+
+    private abstract static class TypeProbe<T> extends JsonParser<T> {
+        Type type() {
+            return generateType();
+        }
+
+        @Override
+        public NetworkData<? extends T> parse(Response response) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class CourseProbe extends TypeProbe<List<Course>> {
+    }
+}
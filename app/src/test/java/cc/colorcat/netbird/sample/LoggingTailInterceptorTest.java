@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import cc.colorcat.netbird.Connection;
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.Level;
+import cc.colorcat.netbird.Logger;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.Platform;
+import cc.colorcat.netbird.Request;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.Scheduler;
+import cc.colorcat.netbird.logging.LoggingTailInterceptor;
+
+/**
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class LoggingTailInterceptorTest {
+    private static final String FEED = "[{\"id\":1,\"name\":\"css\"},{\"id\":2,\"name\":\"html\"},{\"id\":3,\"name\":\"js\"}]";
+
+    private LoopbackServer server;
+    private final List<String> logs = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void logsWholeContentByDefault() throws IOException {
+        NetBird bird = newBird(new LoggingTailInterceptor());
+        Response response = bird.newCall(new Request.Builder().path("feed").build()).execute();
+        Assert.assertEquals(1, logs.size());
+        Assert.assertTrue(logs.get(0), logs.get(0).contains("response content --> " + FEED));
+        Assert.assertEquals(FEED, response.responseBody().string());
+    }
+
+    @Test
+    public void logsCappedPreviewWhileStreaming() throws IOException {
+        NetBird bird = newBird(new LoggingTailInterceptor(Charset.forName("UTF-8"), false, 16));
+        Response response = bird.newCall(new Request.Builder().path("feed").build()).execute();
+        // nothing has been read, nothing has been buffered
+        Assert.assertEquals(0, logs.size());
+
+        byte[] head = new byte[16];
+        int count = 0;
+        for (int length; count < head.length; count += length) {
+            length = response.responseBody().stream().read(head, count, head.length - count);
+        }
+        // the rest of the feed is still on its way, the preview is logged already
+        Assert.assertEquals(1, logs.size());
+        String log = logs.get(0);
+        Assert.assertTrue(log, log.contains("response content --> " + FEED.substring(0, 16) + "\n... (first 16 bytes)"));
+        Assert.assertFalse(log, log.contains(FEED.substring(0, 17)));
+
+        Assert.assertEquals(FEED.substring(16), response.responseBody().string());
+        response.responseBody().close();
+        Assert.assertEquals(1, logs.size());
+    }
+
+    @Test
+    public void logsShortContentAtEnd() throws IOException {
+        NetBird bird = newBird(new LoggingTailInterceptor(Charset.forName("UTF-8"), false, 1024));
+        Response response = bird.newCall(new Request.Builder().path("hello").build()).execute();
+        Assert.assertEquals("hello", response.responseBody().string());
+        Assert.assertEquals(1, logs.size());
+        Assert.assertTrue(logs.get(0), logs.get(0).contains("response content --> hello\n<"));
+    }
+
+    private NetBird newBird(LoggingTailInterceptor interceptor) {
+        return new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new CapturingPlatform())
+                .addTailInterceptor(interceptor)
+                .build();
+    }
+
+
+    private final class CapturingPlatform extends Platform {
+        private final Platform generic = new GenericPlatform();
+        private final Logger logger = new Logger() {
+            @Override
+            public void log(String tag, String msg, Level level) {
+                logs.add(msg);
+            }
+        };
+
+        @Override
+        public Connection connection() {
+            return generic.connection();
+        }
+
+        @Override
+        public Scheduler scheduler() {
+            return generic.scheduler();
+        }
+
+        @Override
+        public Logger logger() {
+            return logger;
+        }
+    }
+}
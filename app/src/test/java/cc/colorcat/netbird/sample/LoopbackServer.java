@@ -0,0 +1,259 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird.sample;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A minimal HTTP/1.1 server on the loopback interface, one thread per connection.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class LoopbackServer extends Thread {
+    /**
+     * How long the server takes to answer "/slow".
+     */
+    public static final long SLOW_MILLIS = 200L;
+
+    private final ServerSocket serverSocket;
+    private final AtomicInteger accepted = new AtomicInteger(0);
+    private final AtomicLong rangeBytes = new AtomicLong(0L);
+
+    public LoopbackServer() throws IOException {
+        serverSocket = new ServerSocket(0, 1024, InetAddress.getByName("127.0.0.1"));
+        setDaemon(true);
+    }
+
+    /**
+     * @return the number of connections accepted so far.
+     */
+    public int accepted() {
+        return accepted.get();
+    }
+
+    /**
+     * @return the number of body bytes sent for "/range/&lt;KiB&gt;" so far.
+     */
+    public long rangeBytes() {
+        return rangeBytes.get();
+    }
+
+    /**
+     * @return the byte at {@code position} of the "/range/&lt;KiB&gt;" resource.
+     */
+    public static byte rangeByte(long position) {
+        return (byte) (position % 251);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (; ; ) {
+                final Socket socket = serverSocket.accept();
+                accepted.incrementAndGet();
+                Thread handler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+                handler.setDaemon(true);
+                handler.start();
+            }
+        } catch (IOException ignore) {
+            // closed
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+            boolean closeWhenReused = false;
+            for (String line = readLine(input); line != null; line = readLine(input)) {
+                if (closeWhenReused) {
+                    // as if the idle socket had been closed right after the client checked it
+                    break;
+                }
+                String target = line.split(" ")[1];
+                int query = target.indexOf('?');
+                String path = query != -1 ? target.substring(0, query) : target;
+                int contentLength = 0;
+                String range = null;
+                for (String header = readLine(input); header != null && !header.isEmpty(); header = readLine(input)) {
+                    String lower = header.toLowerCase(Locale.US);
+                    if (lower.startsWith("content-length:")) {
+                        contentLength = Integer.parseInt(header.substring(15).trim());
+                    } else if (lower.startsWith("range:")) {
+                        range = header.substring(6).trim();
+                    }
+                }
+                byte[] body = new byte[contentLength];
+                for (int read = 0; read < contentLength; ) {
+                    read += input.read(body, read, contentLength - read);
+                }
+                if (path.endsWith("/slow")) {
+                    Thread.sleep(SLOW_MILLIS);
+                    write(output, "HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\nslow");
+                } else if (path.endsWith("/feed")) {
+                    write(output, "HTTP/1.1 200 OK\r\nContent-Type: application/json; charset=utf-8\r\n"
+                            + "Transfer-Encoding: chunked\r\n\r\n");
+                    writeChunk(output, "[{\"id\":1,\"name\":\"css\"},");
+                    output.flush();
+                    Thread.sleep(SLOW_MILLIS);
+                    writeChunk(output, "{\"id\":2,\"name\":\"html\"},{\"id\":3,\"name\":\"js\"}]");
+                    write(output, "0\r\n\r\n");
+                } else if (path.contains("/courses/")) {
+                    int count = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+                    write(output, "HTTP/1.1 200 OK\r\nContent-Type: application/json; charset=utf-8\r\n"
+                            + "Transfer-Encoding: chunked\r\n\r\n");
+                    StringBuilder courses = new StringBuilder("[");
+                    for (int i = 1; i <= count; ++i) {
+                        courses.append("{\"id\":").append(i).append(",\"name\":\"course ").append(i).append("\"}")
+                                .append(i < count ? ',' : ']');
+                    }
+                    writeChunk(output, count > 0 ? courses.toString() : "[]");
+                    write(output, "0\r\n\r\n");
+                } else if (path.contains("/stream/")) {
+                    long size = Long.parseLong(path.substring(path.lastIndexOf('/') + 1)) << 10;
+                    write(output, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n");
+                    byte[] block = new byte[8 * 1024];
+                    for (long position = 0L; position < size; ) {
+                        int count = (int) Math.min(block.length, size - position);
+                        for (int i = 0; i < count; ++i) {
+                            block[i] = rangeByte(position + i);
+                        }
+                        write(output, Integer.toHexString(count) + "\r\n");
+                        output.write(block, 0, count);
+                        write(output, "\r\n");
+                        position += count;
+                    }
+                    write(output, "0\r\n\r\n");
+                } else if (path.contains("/range/")) {
+                    long size = Long.parseLong(path.substring(path.lastIndexOf('/') + 1)) << 10;
+                    long start = 0L;
+                    long end = size - 1L;
+                    if (range != null) {
+                        // bytes=start-end
+                        String[] bounds = range.substring(6).split("-");
+                        start = Long.parseLong(bounds[0]);
+                        end = bounds.length > 1 ? Math.min(end, Long.parseLong(bounds[1])) : end;
+                        write(output, "HTTP/1.1 206 Partial Content\r\nETag: \"r1\"\r\nContent-Range: bytes "
+                                + start + '-' + end + '/' + size + "\r\n");
+                    } else {
+                        write(output, "HTTP/1.1 200 OK\r\nETag: \"r1\"\r\n");
+                    }
+                    write(output, "Content-Length: " + (end - start + 1L) + "\r\n\r\n");
+                    byte[] block = new byte[8 * 1024];
+                    for (long position = start; position <= end; ) {
+                        int count = (int) Math.min(block.length, end - position + 1L);
+                        for (int i = 0; i < count; ++i) {
+                            block[i] = rangeByte(position + i);
+                        }
+                        output.write(block, 0, count);
+                        rangeBytes.addAndGet(count);
+                        position += count;
+                    }
+                } else if (path.contains("/blob/")) {
+                    long size = Long.parseLong(path.substring(path.lastIndexOf('/') + 1)) << 20;
+                    write(output, "HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\n"
+                            + "Content-Length: " + size + "\r\n\r\n");
+                    byte[] block = new byte[64 * 1024];
+                    for (long written = 0L; written < size; written += block.length) {
+                        output.write(block, 0, (int) Math.min(block.length, size - written));
+                    }
+                } else if (path.endsWith("/chunked")) {
+                    write(output, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                            + "8\r\nchunked-\r\n4;ext=1\r\nbody\r\n0\r\n\r\n");
+                } else if (path.endsWith("/close")) {
+                    write(output, "HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 3\r\n\r\nbye");
+                    break;
+                } else if (path.endsWith("/idle-close")) {
+                    write(output, "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello");
+                    closeWhenReused = true;
+                } else if (path.endsWith("/gzip")) {
+                    byte[] gzip = gzip("hello gzip");
+                    write(output, "HTTP/1.1 200 OK\r\nContent-Type: text/plain; charset=utf-8\r\n"
+                            + "Content-Encoding: gzip\r\nContent-Length: " + gzip.length + "\r\n\r\n");
+                    output.write(gzip);
+                } else if (path.endsWith("/echo")) {
+                    write(output, "HTTP/1.1 200 OK\r\nContent-Length: " + contentLength + "\r\n\r\n");
+                    output.write(body);
+                } else {
+                    write(output, "HTTP/1.1 200 OK\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: 5\r\n\r\nhello");
+                }
+                output.flush();
+            }
+        } catch (IOException | InterruptedException ignore) {
+            // the client went away
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private static void write(OutputStream output, String content) throws IOException {
+        output.write(content.getBytes("ISO-8859-1"));
+    }
+
+    private static void writeChunk(OutputStream output, String content) throws IOException {
+        byte[] bytes = content.getBytes("UTF-8");
+        write(output, Integer.toHexString(bytes.length) + "\r\n");
+        output.write(bytes);
+        write(output, "\r\n");
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream output = new GZIPOutputStream(bytes);
+        output.write(content.getBytes("UTF-8"));
+        output.close();
+        return bytes.toByteArray();
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = input.read(); b != '\n'; b = input.read()) {
+            if (b == -1) return null;
+            if (b != '\r') line.write(b);
+        }
+        return line.toString("ISO-8859-1");
+    }
+
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import cc.colorcat.netbird.Headers;
+import cc.colorcat.netbird.cache.MemoryCache;
+
+/**
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class MemoryCacheTest {
+    private static final Headers EMPTY = Headers.ofWithIgnoreNull(Collections.<String, List<String>>emptyMap());
+
+    @Test
+    public void evictsLeastRecentlyUsedByWeight() {
+        MemoryCache cache = new MemoryCache(800L);
+        Assert.assertTrue(cache.put("a", EMPTY, new byte[100]));
+        Assert.assertTrue(cache.put("b", EMPTY, new byte[100]));
+        Assert.assertTrue(cache.put("c", EMPTY, new byte[100]));
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertTrue(cache.put("d", EMPTY, new byte[100]));
+        Assert.assertTrue(cache.put("e", EMPTY, new byte[100]));
+        Assert.assertTrue(cache.put("f", EMPTY, new byte[100]));
+        Assert.assertTrue(cache.put("g", EMPTY, new byte[100]));
+        Assert.assertTrue(cache.put("h", EMPTY, new byte[100]));
+        Assert.assertEquals(800L, cache.size());
+        Assert.assertTrue(cache.put("i", EMPTY, new byte[100]));
+        Assert.assertEquals(null, cache.get("b"));
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertEquals(800L, cache.size());
+    }
+
+    @Test
+    public void rejectsHeavyEntries() {
+        MemoryCache cache = new MemoryCache(800L);
+        Assert.assertTrue(cache.put("a", EMPTY, new byte[100]));
+        Assert.assertFalse(cache.put("a", EMPTY, new byte[101]));
+        Assert.assertEquals(null, cache.get("a"));
+        Assert.assertEquals(0L, cache.size());
+    }
+
+    @Test
+    public void weighsHeaders() {
+        Map<String, List<String>> map = Collections.singletonMap("Content-Type", Collections.singletonList("text/plain"));
+        MemoryCache cache = new MemoryCache(1024L * 1024L);
+        cache.put("a", Headers.ofWithIgnoreNull(map), new byte[10]);
+        Assert.assertTrue(cache.size() > 10L + ("Content-Type".length() + "text/plain".length()));
+        cache.remove("a");
+        Assert.assertEquals(0L, cache.size());
+        Assert.assertEquals(0, cache.hitCount());
+    }
+}
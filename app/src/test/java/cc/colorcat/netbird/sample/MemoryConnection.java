@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird.sample;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import cc.colorcat.netbird.Connection;
+import cc.colorcat.netbird.Headers;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.Request;
+import cc.colorcat.netbird.RequestBody;
+import cc.colorcat.netbird.ResponseBody;
+
+/**
+ * A {@link Connection} which never touches the network and answers every request
+ * with the same in-memory body, used to measure the overhead of NetBird itself.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class MemoryConnection implements Connection {
+    private final byte[] content;
+    private final long delayMillis;
+
+    public MemoryConnection(byte[] content, long delayMillis) {
+        this.content = content;
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public void connect(NetBird netBird, Request request) throws IOException {
+        if (delayMillis > 0L) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void writeHeaders(Headers headers) {
+    }
+
+    @Override
+    public void writeRequestBody(RequestBody requestBody) {
+    }
+
+    @Override
+    public int responseCode() {
+        return 200;
+    }
+
+    @Override
+    public String responseMsg() {
+        return "OK";
+    }
+
+    @Override
+    public Headers responseHeaders() {
+        return Headers.ofWithIgnoreNull(Collections.<String, List<String>>emptyMap());
+    }
+
+    @Override
+    public ResponseBody responseBody(Headers headers) {
+        return ResponseBody.create(content, "application/json; charset=utf-8");
+    }
+
+    @Override
+    public void cancel() {
+    }
+
+    @SuppressWarnings("CloneDoesntCallSuperClone")
+    @Override
+    public Connection clone() {
+        return new MemoryConnection(content, delayMillis);
+    }
+
+    @Override
+    public void close() {
+    }
+}
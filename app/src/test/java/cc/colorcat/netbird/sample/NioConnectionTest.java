@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import cc.colorcat.netbird.ConnectionPool;
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.NioConnection;
+import cc.colorcat.netbird.Request;
+import cc.colorcat.netbird.Response;
+
+/**
+ * Runs {@link NioConnection} against a minimal HTTP/1.1 server on the loopback interface.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class NioConnectionTest {
+    private LoopbackServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void reusesKeepAliveSocket() throws IOException {
+        ConnectionPool pool = new ConnectionPool();
+        NetBird bird = newNetBird(pool);
+        for (int i = 0; i < 5; ++i) {
+            Assert.assertEquals("hello", get(bird, "hello"));
+        }
+        Assert.assertEquals(1, server.accepted());
+        Assert.assertEquals(1L, pool.missCount());
+        Assert.assertEquals(4L, pool.hitCount());
+        Assert.assertEquals(1, pool.idleCount());
+    }
+
+    @Test
+    public void readsChunkedBodyAndWritesRequestBody() throws IOException {
+        ConnectionPool pool = new ConnectionPool();
+        NetBird bird = newNetBird(pool);
+        Assert.assertEquals("chunked-body", get(bird, "chunked"));
+        Request request = new Request.Builder().path("echo").post().add("name", "netbird").build();
+        Response response = bird.newCall(request).execute();
+        Assert.assertEquals("name=netbird", response.responseBody().string());
+        Assert.assertEquals(1, server.accepted());
+        Assert.assertEquals(1L, pool.hitCount());
+    }
+
+    @Test
+    public void doesNotPoolClosedConnection() throws IOException {
+        ConnectionPool pool = new ConnectionPool();
+        NetBird bird = newNetBird(pool);
+        Assert.assertEquals("bye", get(bird, "close"));
+        Assert.assertEquals("bye", get(bird, "close"));
+        Assert.assertEquals(2, server.accepted());
+        Assert.assertEquals(0, pool.idleCount());
+    }
+
+    @Test
+    public void evictsExpiredSocket() throws IOException, InterruptedException {
+        ConnectionPool pool = new ConnectionPool(5, 100L, TimeUnit.MILLISECONDS);
+        NetBird bird = newNetBird(pool);
+        Assert.assertEquals("hello", get(bird, "hello"));
+        Thread.sleep(200L);
+        Assert.assertEquals("hello", get(bird, "hello"));
+        Assert.assertEquals(2, server.accepted());
+        Assert.assertEquals(1L, pool.evictionCount());
+        Assert.assertEquals(0L, pool.hitCount());
+    }
+
+    @Test
+    public void retriesIdempotentRequestOnStaleSocket() throws IOException {
+        ConnectionPool pool = new ConnectionPool();
+        NetBird bird = newNetBird(pool);
+        Assert.assertEquals("hello", get(bird, "idle-close"));
+        // the pooled socket looks healthy, the server closes it when the request arrives
+        Assert.assertEquals("hello", get(bird, "hello"));
+        Assert.assertEquals(2, server.accepted());
+        Assert.assertEquals(1L, pool.hitCount());
+        Assert.assertEquals(1, pool.idleCount());
+    }
+
+    @Test
+    public void doesNotRetryPostOnStaleSocket() throws IOException {
+        ConnectionPool pool = new ConnectionPool();
+        NetBird bird = newNetBird(pool);
+        Assert.assertEquals("hello", get(bird, "idle-close"));
+        Request request = new Request.Builder().path("echo").post().add("name", "netbird").build();
+        try {
+            bird.newCall(request).execute();
+            Assert.assertTrue("a POST must not be sent twice", false);
+        } catch (IOException expected) {
+        }
+        Assert.assertEquals(1, server.accepted());
+    }
+
+    private NetBird newNetBird(ConnectionPool pool) {
+        return new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform())
+                .connection(new NioConnection(pool))
+                .enableGzip(false)
+                .build();
+    }
+
+    private static String get(NetBird bird, String path) throws IOException {
+        Request request = new Request.Builder().path(path).build();
+        Response response = bird.newCall(request).execute();
+        return response.responseBody().string();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cc.colorcat.netbird.DownloadListener;
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.RangeDownloader;
+import cc.colorcat.netbird.Request;
+
+/**
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class RangeDownloaderTest {
+    private LoopbackServer server;
+    private NetBird bird;
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackServer();
+        server.start();
+        bird = new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform())
+                .build();
+        dir = new File(System.getProperty("java.io.tmpdir"), "netbird-range-" + System.nanoTime());
+        file = new File(dir, "resource.bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void downloadsSegmentsInParallel() throws IOException {
+        final AtomicLong finished = new AtomicLong(0L);
+        final AtomicInteger percent = new AtomicInteger(-1);
+        RangeDownloader downloader = new RangeDownloader.Builder(bird, newRequest(4096), file)
+                .segments(4)
+                .downloadListener(new DownloadListener() {
+                    @Override
+                    public void onChanged(long done, long total, int p) {
+                        Assert.assertEquals(4096L << 10, total);
+                        finished.set(done);
+                        percent.set(p);
+                    }
+                })
+                .build();
+        Assert.assertEquals(file, downloader.download());
+        assertContent(4096L << 10);
+        Assert.assertEquals(4096L << 10, finished.get());
+        Assert.assertEquals(100, percent.get());
+        Assert.assertEquals(1, dir.listFiles().length);
+        // the probe asks for a single byte, the segments for the rest
+        Assert.assertEquals((4096L << 10) + 1L, server.rangeBytes());
+    }
+
+    @Test
+    public void resumesAfterCancel() throws IOException {
+        final long size = 16384L << 10;
+        final AtomicReference<RangeDownloader> first = new AtomicReference<>();
+        first.set(new RangeDownloader.Builder(bird, newRequest(16384), file)
+                .segments(4)
+                .downloadListener(new DownloadListener() {
+                    @Override
+                    public void onChanged(long finished, long total, int percent) {
+                        if (percent >= 30) first.get().cancel();
+                    }
+                })
+                .build());
+        try {
+            first.get().download();
+            Assert.assertTrue("expected an IOException", false);
+        } catch (IOException expected) {
+            // canceled
+        }
+        Assert.assertTrue(new File(file.getPath() + ".progress").isFile());
+        Assert.assertFalse(file.exists());
+
+        long before = server.rangeBytes();
+        new RangeDownloader.Builder(bird, newRequest(16384), file).segments(4).build().download();
+        long resumed = server.rangeBytes() - before;
+        Assert.assertTrue("downloaded " + resumed + " of " + size + " again", resumed < size * 8 / 10);
+        assertContent(size);
+        Assert.assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void savesWholeBodyWithoutRangeSupport() throws IOException {
+        Request request = new Request.Builder().path("hello").build();
+        new RangeDownloader.Builder(bird, request, file).build().download();
+        Assert.assertEquals(5L, file.length());
+        Assert.assertEquals(1, dir.listFiles().length);
+    }
+
+    private static Request newRequest(int kib) {
+        return new Request.Builder().path("range/" + kib).build();
+    }
+
+    private void assertContent(long size) throws IOException {
+        Assert.assertEquals(size, file.length());
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try {
+            for (long position = 0L; position < size; ++position) {
+                if ((byte) input.read() != LoopbackServer.rangeByte(position)) {
+                    Assert.assertTrue("mismatch at " + position, false);
+                }
+            }
+        } finally {
+            input.close();
+        }
+    }
+}
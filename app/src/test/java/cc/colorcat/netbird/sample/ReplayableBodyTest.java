@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import cc.colorcat.netbird.ReplayableBody;
+import cc.colorcat.netbird.ResponseBody;
+
+/**
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class ReplayableBodyTest {
+    private static final int THRESHOLD = 1024;
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(System.getProperty("java.io.tmpdir"), "netbird-replay-" + System.nanoTime());
+        Assert.assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        Assert.assertTrue(directory.delete());
+    }
+
+    @Test
+    public void replaysSmallBodyFromMemory() throws IOException {
+        byte[] content = content(THRESHOLD);
+        ReplayableBody body = ReplayableBody.create(source(content, content.length), THRESHOLD, directory);
+        Assert.assertArrayEquals(content, body.bytes());
+        Assert.assertArrayEquals(content, body.bytes());
+        Assert.assertFalse(body.isSpilled());
+        Assert.assertEquals(content.length, body.contentLength());
+        body.close();
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void spillsLargeBodyToFile() throws IOException {
+        byte[] content = content(THRESHOLD * 10 + 7);
+        ReplayableBody body = ReplayableBody.create(source(content, -1L), THRESHOLD, directory);
+        Assert.assertEquals(-1L, body.contentLength());
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        body.writeTo(copy);
+        Assert.assertTrue(body.isSpilled());
+        Assert.assertArrayEquals(content, copy.toByteArray());
+        Assert.assertArrayEquals(content, body.bytes());
+        Assert.assertEquals(content.length, body.contentLength());
+        body.close();
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void peekReadsOnlyThePrefix() throws IOException {
+        byte[] content = content(THRESHOLD * 4);
+        CountingInputStream input = new CountingInputStream(content);
+        ReplayableBody body = ReplayableBody.create(ResponseBody.create(input, "text/plain", -1L), THRESHOLD, directory);
+        byte[] head = body.peek(100);
+        Assert.assertEquals(100, head.length);
+        Assert.assertEquals(content[99], head[99]);
+        Assert.assertTrue(input.count + " read", input.count < content.length);
+        Assert.assertFalse(body.isSpilled());
+        Assert.assertArrayEquals(content, body.bytes());
+        Assert.assertEquals(content.length, body.peek(content.length * 2).length);
+        body.close();
+    }
+
+    @Test
+    public void interleavedStreamsSeeTheSameBytes() throws IOException {
+        byte[] content = content(THRESHOLD * 3 + 1);
+        ReplayableBody body = ReplayableBody.create(source(content, content.length), THRESHOLD, directory);
+        InputStream first = body.stream();
+        InputStream second = body.stream();
+        ByteArrayOutputStream a = new ByteArrayOutputStream(), b = new ByteArrayOutputStream();
+        byte[] buffer = new byte[300];
+        int n1, n2;
+        do {
+            n1 = first.read(buffer);
+            if (n1 > 0) a.write(buffer, 0, n1);
+            n2 = second.read(buffer, 0, 170);
+            if (n2 > 0) b.write(buffer, 0, n2);
+        } while (n1 != -1 || n2 != -1);
+        Assert.assertArrayEquals(content, a.toByteArray());
+        Assert.assertArrayEquals(content, b.toByteArray());
+        first.close();
+        Assert.assertArrayEquals(content, body.bytes());
+        body.close();
+    }
+
+    @Test
+    public void createReturnsReplayableAsIs() {
+        ReplayableBody body = ReplayableBody.create(source(new byte[1], 1L));
+        Assert.assertSame(body, ReplayableBody.create(body));
+    }
+
+    @Test
+    public void readAfterCloseFails() {
+        ReplayableBody body = ReplayableBody.create(source(new byte[1], 1L));
+        body.close();
+        try {
+            body.bytes();
+            Assert.assertTrue("expected IOException", false);
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static ResponseBody source(byte[] content, long contentLength) {
+        return ResponseBody.create(new ByteArrayInputStream(content), "text/plain", contentLength);
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            content[i] = (byte) (i * 31);
+        }
+        return content;
+    }
+
+
+    private static class CountingInputStream extends ByteArrayInputStream {
+        private int count = 0;
+
+        private CountingInputStream(byte[] buf) {
+            super(buf);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int length = super.read(b, off, Math.min(len, 64));
+            if (length > 0) count += length;
+            return length;
+        }
+    }
+}
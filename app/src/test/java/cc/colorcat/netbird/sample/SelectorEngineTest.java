@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cc.colorcat.netbird.Call;
+import cc.colorcat.netbird.Callback;
+import cc.colorcat.netbird.Calls;
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.Interceptor;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.Request;
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.StateIOException;
+
+/**
+ * Runs asynchronous calls through the selector engine against {@link LoopbackServer}.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class SelectorEngineTest {
+    private static final int CALLS = 500;
+
+    private LoopbackServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void multiplexesSlowCalls() throws InterruptedException {
+        NetBird bird = newNetBird().maxRunning(CALLS).build();
+        final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final AtomicInteger succeeded = new AtomicInteger(0);
+        final CountDownLatch finished = new CountDownLatch(CALLS);
+        Callback callback = new Callback() {
+            @Override
+            public void onStart() {
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                threads.add(Thread.currentThread().getName());
+                if ("slow".equals(response.responseBody().string())) {
+                    succeeded.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, StateIOException cause) {
+            }
+
+            @Override
+            public void onFinish() {
+                finished.countDown();
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; ++i) {
+            // distinct parameters, the dispatcher rejects duplicate requests
+            bird.newCall(new Request.Builder().path("slow").add("i", Integer.toString(i)).build()).enqueue(callback);
+        }
+        Assert.assertTrue(finished.await(30, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println(CALLS + " slow calls: " + elapsed + " ms on " + threads.size() + " threads");
+
+        Assert.assertEquals(CALLS, succeeded.get());
+        Assert.assertTrue(threads.size() <= Math.max(2, Runtime.getRuntime().availableProcessors()));
+        // one thread per call would need CALLS / threads rounds of SLOW_MILLIS
+        Assert.assertTrue(elapsed < 25 * LoopbackServer.SLOW_MILLIS);
+    }
+
+    @Test
+    public void submitReusesConnection() throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        NetBird bird = newNetBird().build();
+        for (String path : new String[]{"hello", "chunked", "hello"}) {
+            Response response = Calls.submit(bird.newCall(new Request.Builder().path(path).build())).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(200, response.responseCode());
+            Assert.assertEquals("hello".equals(path) ? "hello" : "chunked-body", response.responseBody().string());
+        }
+        Request post = new Request.Builder().path("echo").post().add("name", "netbird").build();
+        Response response = Calls.submit(bird.newCall(post)).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("name=netbird", response.responseBody().string());
+        Assert.assertEquals(1, server.accepted());
+    }
+
+    @Test
+    public void fallsBackWithInterceptors() throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        NetBird bird = newNetBird()
+                .addTailInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        return chain.proceed(chain.request());
+                    }
+                })
+                .build();
+        Response response = Calls.submit(bird.newCall(new Request.Builder().path("hello").build())).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("hello", response.responseBody().string());
+        response.responseBody().close();
+    }
+
+    @Test
+    public void streamsBodyLargerThanTheBuffer() throws Exception {
+        NetBird bird = newNetBird().enableGzip(false).build();
+        long size = 64L << 20;
+        Response response = Calls.submit(bird.newCall(new Request.Builder().path("range/65536").build()))
+                .get(5, TimeUnit.SECONDS);
+        // handed over with the headers, the selector stops reading while nobody does
+        Thread.sleep(200L);
+        Assert.assertTrue("sent " + server.rangeBytes(), server.rangeBytes() < size / 2);
+        Assert.assertEquals(size, readRange(response.responseBody().stream()));
+        Assert.assertEquals(size, server.rangeBytes());
+        // the channel has been read to the end and is reused
+        Response next = Calls.submit(bird.newCall(new Request.Builder().path("hello").build())).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("hello", next.responseBody().string());
+        Assert.assertEquals(1, server.accepted());
+    }
+
+    @Test
+    public void streamsChunkedBodyOnceItOutgrowsTheBuffer() throws Exception {
+        NetBird bird = newNetBird().enableGzip(false).build();
+        Response response = Calls.submit(bird.newCall(new Request.Builder().path("stream/4096").build()))
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(4096L << 10, readRange(response.responseBody().stream()));
+    }
+
+    @Test
+    public void closingStreamedBodyCancelsTheExchange() throws Exception {
+        NetBird bird = newNetBird().enableGzip(false).build();
+        Response response = Calls.submit(bird.newCall(new Request.Builder().path("range/65536").build()))
+                .get(5, TimeUnit.SECONDS);
+        InputStream input = response.responseBody().stream();
+        Assert.assertEquals(LoopbackServer.rangeByte(0L), (byte) input.read());
+        input.close();
+        Response next = Calls.submit(bird.newCall(new Request.Builder().path("hello").build())).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("hello", next.responseBody().string());
+        // the abandoned channel can't be reused
+        Assert.assertEquals(2, server.accepted());
+    }
+
+    private static long readRange(InputStream input) throws IOException {
+        byte[] buffer = new byte[16 * 1024];
+        long position = 0L;
+        try {
+            for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                for (int i = 0; i < read; ++i) {
+                    if (buffer[i] != LoopbackServer.rangeByte(position + i)) {
+                        throw new AssertionError("unexpected byte at " + (position + i));
+                    }
+                }
+                position += read;
+            }
+        } finally {
+            input.close();
+        }
+        return position;
+    }
+
+    private NetBird.Builder newNetBird() {
+        return new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform())
+                .selectorEngine(true);
+    }
+}
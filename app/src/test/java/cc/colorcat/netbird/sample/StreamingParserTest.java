@@ -0,0 +1,271 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird.sample;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cc.colorcat.netbird.Connection;
+import cc.colorcat.netbird.GenericPlatform;
+import cc.colorcat.netbird.Logger;
+import cc.colorcat.netbird.MRequest;
+import cc.colorcat.netbird.NetBird;
+import cc.colorcat.netbird.Platform;
+import cc.colorcat.netbird.Scheduler;
+import cc.colorcat.netbird.StreamingParser;
+import cc.colorcat.parser.gson.GsonStreamingParser;
+import cc.colorcat.parser.jackson.JacksonStreamingParser;
+
+/**
+ * Reads a json array which the server sends in two parts, {@link LoopbackServer#SLOW_MILLIS} apart,
+ * and checks the first element is delivered before the rest of the body arrives.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public class StreamingParserTest {
+    private LoopbackServer server;
+    private NetBird bird;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LoopbackServer();
+        server.start();
+        bird = new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new GenericPlatform())
+                .enableGzip(false)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void jacksonDeliversFirstElementEarly() throws IOException, InterruptedException {
+        assertDeliversFirstElementEarly(new JacksonStreamingParser<Course>() {
+        });
+    }
+
+    @Test
+    public void gsonDeliversFirstElementEarly() throws IOException, InterruptedException {
+        assertDeliversFirstElementEarly(new GsonStreamingParser<Course>() {
+        });
+    }
+
+    @Test
+    public void executeReturnsCount() throws IOException {
+        final List<String> names = new ArrayList<>();
+        MRequest<Integer> request = new MRequest.Builder<>(new JacksonStreamingParser<Course>() {
+        })
+                .path("feed")
+                .listener(new MRequest.SimpleElementListener<Course>() {
+                    @Override
+                    public void onElement(Course element) {
+                        names.add(element.getName());
+                    }
+                })
+                .build();
+        Assert.assertEquals(Integer.valueOf(3), bird.execute(request));
+        Assert.assertEquals("[css, html, js]", names.toString());
+    }
+
+    @Test
+    public void failsOnNonArray() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger(0);
+        MRequest<Integer> request = new MRequest.Builder<>(new GsonStreamingParser<Course>() {
+        })
+                .path("hello")
+                .listener(new MRequest.SimpleElementListener<Course>() {
+                    @Override
+                    public void onFailure(int code, String msg) {
+                        failures.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onFinish() {
+                        finished.countDown();
+                    }
+                })
+                .build();
+        bird.send(request);
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, failures.get());
+    }
+
+    @Test
+    public void busyTargetThreadPausesReading() throws InterruptedException {
+        final StalledScheduler scheduler = new StalledScheduler();
+        NetBird bird = new NetBird.Builder("http://127.0.0.1:" + server.port() + "/")
+                .platform(new SchedulingPlatform(scheduler))
+                .enableGzip(false)
+                .build();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger(-1);
+        final List<Integer> ids = new ArrayList<>();
+        MRequest<Integer> request = new MRequest.Builder<>(new JacksonStreamingParser<Course>() {
+        })
+                .path("courses/1000")
+                .listener(new MRequest.SimpleElementListener<Course>() {
+                    @Override
+                    public void onElement(Course element) {
+                        ids.add(element.getId());
+                    }
+
+                    @Override
+                    public void onSuccess(Integer result) {
+                        count.set(result);
+                    }
+
+                    @Override
+                    public void onFinish() {
+                        finished.countDown();
+                    }
+                })
+                .build();
+        bird.send(request);
+        for (int i = 0; i < 100 && scheduler.queued() < StreamingParser.MAX_PENDING_ELEMENTS; ++i) {
+            Thread.sleep(20L);
+        }
+        // the whole body has arrived, but no more elements are read until the target thread catches up
+        Thread.sleep(200L);
+        int queued = scheduler.queued();
+        Assert.assertTrue(queued + " queued", queued <= StreamingParser.MAX_PENDING_ELEMENTS + 1);
+        Assert.assertEquals(1, finished.getCount());
+
+        scheduler.start();
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1000, count.get());
+        Assert.assertEquals(1000, ids.size());
+        for (int i = 0; i < ids.size(); ++i) {
+            Assert.assertEquals(i + 1, ids.get(i).intValue());
+        }
+    }
+
+    private void assertDeliversFirstElementEarly(StreamingParser<Course> parser) throws IOException, InterruptedException {
+        // loads and links the json library first, otherwise that alone outlasts the server's pause
+        bird.execute(new MRequest.Builder<>(parser).path("feed").build());
+
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicLong firstElement = new AtomicLong(0L);
+        final AtomicInteger count = new AtomicInteger(-1);
+        final List<Integer> ids = new ArrayList<>();
+        MRequest<Integer> request = new MRequest.Builder<>(parser)
+                .path("feed")
+                .listener(new MRequest.SimpleElementListener<Course>() {
+                    @Override
+                    public void onElement(Course element) {
+                        firstElement.compareAndSet(0L, System.nanoTime());
+                        ids.add(element.getId());
+                    }
+
+                    @Override
+                    public void onSuccess(Integer result) {
+                        count.set(result);
+                    }
+
+                    @Override
+                    public void onFinish() {
+                        finished.countDown();
+                    }
+                })
+                .build();
+        bird.send(request);
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        long lastElement = System.nanoTime();
+        Assert.assertEquals(3, count.get());
+        Assert.assertEquals("[1, 2, 3]", ids.toString());
+        long lead = TimeUnit.NANOSECONDS.toMillis(lastElement - firstElement.get());
+        Assert.assertTrue("first element only " + lead + " ms ahead", lead >= LoopbackServer.SLOW_MILLIS / 2);
+    }
+
+
+    /**
+     * A target thread which runs nothing until it is started, like a main looper busy with other work.
+     */
+    private static final class StalledScheduler extends Thread implements Scheduler {
+        private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+
+        private StalledScheduler() {
+            setDaemon(true);
+        }
+
+        @Override
+        public boolean isTargetThread() {
+            return Thread.currentThread() == this;
+        }
+
+        @Override
+        public void onTargetThread(Runnable runnable) {
+            queue.add(runnable);
+        }
+
+        private int queued() {
+            return queue.size();
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (; ; ) {
+                    queue.take().run();
+                }
+            } catch (InterruptedException ignore) {
+            }
+        }
+    }
+
+    private static final class SchedulingPlatform extends Platform {
+        private final Platform generic = new GenericPlatform();
+        private final Scheduler scheduler;
+
+        private SchedulingPlatform(Scheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public Connection connection() {
+            return generic.connection();
+        }
+
+        @Override
+        public Scheduler scheduler() {
+            return scheduler;
+        }
+
+        @Override
+        public Logger logger() {
+            return generic.logger();
+        }
+    }
+}
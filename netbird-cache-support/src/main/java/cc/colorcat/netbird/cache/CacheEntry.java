@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import cc.colorcat.netbird.Headers;
+import cc.colorcat.netbird.MutableHeaders;
+
+/**
+ * The layout of a cached response, headers and body in one file:
+ * <pre>
+ *     int     magic
+ *     int     length of the header block
+ *     header block: int count, then count pairs of modified UTF-8 name and value
+ *     body    up to the end of the file
+ * </pre>
+ * The body starts at {@link #bodyOffset} so its length follows from the file length.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+final class CacheEntry {
+    private static final int MAGIC = 0x4E424301;
+    private static final int PREFIX_SIZE = 8;
+
+    final Headers headers;
+    final long bodyOffset;
+
+    private CacheEntry(Headers headers, long bodyOffset) {
+        this.headers = headers;
+        this.bodyOffset = bodyOffset;
+    }
+
+    static void writeHeaders(OutputStream output, Headers headers) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(PREFIX_SIZE + (headers.size() << 5));
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(MAGIC);
+        data.writeInt(0);
+        data.writeInt(headers.size());
+        for (int i = 0, size = headers.size(); i < size; ++i) {
+            data.writeUTF(headers.name(i));
+            data.writeUTF(headers.value(i));
+        }
+        byte[] block = bytes.toByteArray();
+        int length = block.length - PREFIX_SIZE;
+        block[4] = (byte) (length >>> 24);
+        block[5] = (byte) (length >>> 16);
+        block[6] = (byte) (length >>> 8);
+        block[7] = (byte) length;
+        output.write(block);
+    }
+
+    /**
+     * Reads the header block and leaves {@code input} at the first byte of the body.
+     *
+     * @return null if {@code input} doesn't start with a header block of this format.
+     */
+    static CacheEntry readHeaders(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        byte[] block;
+        try {
+            if (data.readInt() != MAGIC) return null;
+            int length = data.readInt();
+            if (length < 4) return null;
+            block = new byte[length];
+            data.readFully(block);
+        } catch (EOFException e) {
+            return null;
+        }
+        DataInputStream fields = new DataInputStream(new ByteArrayInputStream(block));
+        int count = fields.readInt();
+        if (count < 0) return null;
+        MutableHeaders headers = MutableHeaders.create(count);
+        for (int i = 0; i < count; ++i) {
+            headers.add(fields.readUTF(), fields.readUTF());
+        }
+        return new CacheEntry(headers.toHeaders(), PREFIX_SIZE + block.length);
+    }
+}
@@ -17,8 +17,6 @@
 package cc.colorcat.netbird.cache;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
@@ -36,6 +34,7 @@ import cc.colorcat.netbird.HttpStatus;
 import cc.colorcat.netbird.Interceptor;
 import cc.colorcat.netbird.MutableHeaders;
 import cc.colorcat.netbird.Parameters;
+import cc.colorcat.netbird.ReplayableBody;
 import cc.colorcat.netbird.Request;
 import cc.colorcat.netbird.Response;
 import cc.colorcat.netbird.ResponseBody;
@@ -55,7 +54,21 @@ public class CacheInterceptor implements Interceptor {
         }
     }
 
+    /**
+     * @param memoryCache an in-memory tier in front of the disk, hot responses are served from it
+     *                    without touching the disk. Responses are written through to both tiers.
+     */
+    public static CacheInterceptor newCacheHeadInterceptor(File cacheDirectory, long cacheSize, MemoryCache memoryCache, List<String> ignoredQueryNames) {
+        try {
+            DiskCache cache = DiskCache.open(cacheDirectory, cacheSize);
+            return new CacheInterceptor(cache, memoryCache, ignoredQueryNames);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     protected final DiskCache diskCache;
+    protected final MemoryCache memoryCache;
     protected final List<String> ignoredQueryNames;
     protected final Response errorResponse = new Response.Builder()
             .responseCode(HttpStatus.CODE_CONNECT_ERROR)
@@ -65,14 +78,19 @@ public class CacheInterceptor implements Interceptor {
 
 
     protected CacheInterceptor(DiskCache diskCache, List<String> ignoredQueryNames) {
+        this(diskCache, null, ignoredQueryNames);
+    }
+
+    protected CacheInterceptor(DiskCache diskCache, MemoryCache memoryCache, List<String> ignoredQueryNames) {
         this.diskCache = diskCache;
+        this.memoryCache = memoryCache;
         this.ignoredQueryNames = new ArrayList<>(ignoredQueryNames);
     }
 
     @Override
     public final Response intercept(Chain chain) throws IOException {
         final Request request = chain.request();
-        if (request.method().needBody()) {
+        if (request.method().needBody() || request.headers().value("Range") != null) {
             return chain.proceed(request);
         }
 
@@ -92,6 +110,8 @@ public class CacheInterceptor implements Interceptor {
                 if (responseTime != CacheControl.TIME_INVALIDATE && System.currentTimeMillis() - responseTime < requestMaxAge) {
                     return response;
                 }
+                // a mapped body keeps the entry busy until it is closed
+                response.responseBody().close();
             }
         }
 
@@ -99,14 +119,24 @@ public class CacheInterceptor implements Interceptor {
         if ((response = chain.proceed(request)).responseCode() != 200 || response.responseBody() == null) {
             response = nullElse(loadCached(stableKey), errorResponse);
         } else {
-            final ResponseBody body = response.responseBody();
-            final byte[] content = body.bytes();
-            saveResponseContent(stableKey, content);
+            // the body is copied to the cache and still handed on, without holding a large one on the heap
+            final ReplayableBody body = ReplayableBody.create(response.responseBody());
+            final Headers headers = stampHeaders(response.headers());
+            final boolean saved = saveEntry(stableKey, headers, body);
+            final long length = body.contentLength();
+            if (memoryCache != null) {
+                if (saved && length >= 0L && length <= memoryCache.maxEntrySize()) {
+                    // saved means the body has been read to the end, peeking it whole reads nothing more
+                    memoryCache.put(stableKey, headers, body.peek((int) length));
+                } else {
+                    // a former entry would shadow the new one on the disk
+                    memoryCache.remove(stableKey);
+                }
+            }
             response = response.newBuilder()
-                    .responseBody(ResponseBody.create(content, body.contentType(), body.charset()))
-                    .replaceHeaderIfExists("Content-Length", Long.toString(content.length))
+                    .responseBody(body)
+                    .replaceHeaderIfExists("Content-Length", Long.toString(body.contentLength()))
                     .build();
-            saveResponseHeaders(stableKey, response.headers());
         }
         return response;
     }
@@ -115,6 +145,25 @@ public class CacheInterceptor implements Interceptor {
         return false;
     }
 
+    /**
+     * Drops whatever is cached for {@code request} from both tiers.
+     */
+    public void remove(Request request) throws IOException {
+        final String stableKey = md5(createStableKey(request));
+        if (memoryCache != null) {
+            memoryCache.remove(stableKey);
+        }
+        diskCache.getSnapshot(stableKey).requireDelete();
+    }
+
+    /**
+     * @return the size from which a cached body is mapped into memory and streamed from the page
+     * cache instead of being copied onto the heap, {@link Long#MAX_VALUE} disables it.
+     */
+    protected long mappedBodyThreshold() {
+        return 256L * 1024L;
+    }
+
     protected String createStableKey(Request request) {
         StringBuilder builder = new StringBuilder(request.url()).append(request.path());
         Parameters parameters = request.parameters();
@@ -128,44 +177,107 @@ public class CacheInterceptor implements Interceptor {
     }
 
     private Response loadCached(String stableKey) throws IOException {
-        Response response = null;
-        byte[] content = loadCachedResponseContent(stableKey);
-        if (content != null) {
-            Headers headers = loadCachedResponseHeaders(stableKey);
-            response = new Response.Builder()
-                    .responseCode(200)
-                    .responseMsg("OK")
-                    .responseBody(ResponseBody.create(content, headers.contentType(), headers.charset()))
-                    .headers(headers)
-                    .build();
+        if (memoryCache != null) {
+            MemoryCache.Entry entry = memoryCache.get(stableKey);
+            if (entry != null) {
+                return newCachedResponse(entry.headers, entry.content);
+            }
+        }
+        Response response = loadEntry(stableKey);
+        if (response == null) {
+            response = loadLegacyEntry(stableKey);
         }
         return response;
     }
 
-    private byte[] loadCachedResponseContent(String stableKey) throws IOException {
+    /**
+     * Loads an entry holding headers and body in one file, see {@link CacheEntry}.
+     */
+    private Response loadEntry(String stableKey) throws IOException {
+        DiskCache.Snapshot snapshot = diskCache.getSnapshot(stableKey);
+        final long length = snapshot.getContentLength();
+        final boolean mapped = length >= mappedBodyThreshold();
+        InputStream input = mapped ? snapshot.getMappedInputStream(0L) : snapshot.getInputStream();
+        if (input == null) return null;
+        boolean handedOver = false;
+        try {
+            CacheEntry entry = CacheEntry.readHeaders(input);
+            if (entry == null) {
+                snapshot.requireDelete();
+                return null;
+            }
+            final Headers headers = entry.headers;
+            final long contentLength = mapped ? input.available() : length - entry.bodyOffset;
+            if (mapped) {
+                // the body streams from the mapping, the entry is released once it is read or closed
+                handedOver = true;
+                return new Response.Builder()
+                        .responseCode(200)
+                        .responseMsg("OK")
+                        .responseBody(ResponseBody.create(input, headers.contentType(), contentLength, headers.charset()))
+                        .headers(headers)
+                        .build();
+            }
+            // the body length is exact, so the content is read in place without growing
+            byte[] content = ResponseBody.create(input, null, contentLength).bytes();
+            remember(stableKey, headers, content);
+            return newCachedResponse(headers, content);
+        } catch (IOException e) {
+            snapshot.requireDelete();
+            throw e;
+        } finally {
+            if (!handedOver) close(input);
+        }
+    }
+
+    /**
+     * Loads an entry of the former layout, the body and the headers in two files, and moves it to
+     * the current one.
+     */
+    private Response loadLegacyEntry(String stableKey) throws IOException {
+        byte[] content = loadLegacyContent(stableKey);
+        if (content == null) return null;
+        Headers headers = loadLegacyHeaders(stableKey);
+        saveEntry(stableKey, headers, ReplayableBody.create(ResponseBody.create(content, headers.contentType())));
+        diskCache.getSnapshot(getBodyKey(stableKey)).requireDelete();
+        diskCache.getSnapshot(getHeaderKey(stableKey)).requireDelete();
+        remember(stableKey, headers, content);
+        return newCachedResponse(headers, content);
+    }
+
+    private void remember(String stableKey, Headers headers, byte[] content) {
+        if (memoryCache != null) {
+            memoryCache.put(stableKey, headers, content);
+        }
+    }
+
+    private static Response newCachedResponse(Headers headers, byte[] content) {
+        return new Response.Builder()
+                .responseCode(200)
+                .responseMsg("OK")
+                .responseBody(ResponseBody.create(content, headers.contentType(), headers.charset()))
+                .headers(headers)
+                .build();
+    }
+
+    private byte[] loadLegacyContent(String stableKey) throws IOException {
         byte[] content = null;
         DiskCache.Snapshot snapshot = diskCache.getSnapshot(getBodyKey(stableKey));
         InputStream input = snapshot.getInputStream();
         if (input != null) {
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
             try {
-                byte[] buffer = new byte[4096];
-                for (int length = input.read(buffer); length != -1; length = input.read(buffer)) {
-                    output.write(buffer, 0, length);
-                }
-                output.flush();
-                content = output.toByteArray();
+                content = ResponseBody.create(input, null, snapshot.getContentLength()).bytes();
             } catch (IOException e) {
                 snapshot.requireDelete();
                 throw e;
             } finally {
-                close(input, output);
+                close(input);
             }
         }
         return content;
     }
 
-    private Headers loadCachedResponseHeaders(String stableKey) throws IOException {
+    private Headers loadLegacyHeaders(String stableKey) throws IOException {
         MutableHeaders headers = MutableHeaders.create(12);
         DiskCache.Snapshot snapshot = diskCache.getSnapshot(getHeaderKey(stableKey));
         InputStream input = snapshot.getInputStream();
@@ -182,51 +294,33 @@ public class CacheInterceptor implements Interceptor {
                 close(input, br);
             }
         }
-        return headers;
+        return headers.toHeaders();
     }
 
-    private void saveResponseContent(String stableKey, byte[] content) throws IOException {
-        DiskCache.Snapshot snapshot = diskCache.getSnapshot(getBodyKey(stableKey));
+    /**
+     * @return false if nothing was written because another writer holds the entry,
+     * the body is left unread then.
+     */
+    private boolean saveEntry(String stableKey, Headers headers, ReplayableBody body) throws IOException {
+        DiskCache.Snapshot snapshot = diskCache.getSnapshot(stableKey);
         OutputStream output = snapshot.getOutputStream();
-        if (output != null) {
-            InputStream input = new ByteArrayInputStream(content);
-            try {
-                byte[] buffer = new byte[4096];
-                for (int length = input.read(buffer); length != -1; length = input.read(buffer)) {
-                    output.write(buffer, 0, length);
-                }
-                output.flush();
-            } catch (IOException e) {
-                snapshot.requireDelete();
-                throw e;
-            } finally {
-                close(input, output);
-            }
+        if (output == null) return false;
+        try {
+            CacheEntry.writeHeaders(output, headers);
+            body.writeTo(output);
+            return true;
+        } catch (IOException e) {
+            snapshot.requireDelete();
+            throw e;
+        } finally {
+            close(output);
         }
     }
 
-    private void saveResponseHeaders(String stableKey, Headers headers) throws IOException {
-        if (headers.isEmpty()) return;
+    private static Headers stampHeaders(Headers headers) {
         MutableHeaders mh = headers.toMutableHeaders();
         mh.set(CacheControl.HEADER_NAME_CACHE_DATE, Long.toString(System.currentTimeMillis()));
-        byte[] bytes = mh.toMultiLine().getBytes();
-        DiskCache.Snapshot snapshot = diskCache.getSnapshot(getHeaderKey(stableKey));
-        OutputStream output = snapshot.getOutputStream();
-        if (output != null) {
-            InputStream input = new ByteArrayInputStream(bytes);
-            try {
-                byte[] buffer = new byte[2048];
-                for (int length = input.read(buffer); length != -1; length = input.read(buffer)) {
-                    output.write(buffer, 0, length);
-                }
-                output.flush();
-            } catch (IOException e) {
-                snapshot.requireDelete();
-                throw e;
-            } finally {
-                close(input, output);
-            }
-        }
+        return mh.toHeaders();
     }
 
     private static void close(Closeable... closeables) {
@@ -17,6 +17,9 @@
 package cc.colorcat.netbird.cache;
 
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -26,22 +29,52 @@ import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
+ * The index lives in an append-only journal, one line per operation:
+ * <pre>
+ *     CLEAN key length    a write has been committed
+ *     DIRTY key           a write has started
+ *     READ key            the entry has been read, it only moves the entry in the LRU order
+ *     REMOVE key          the entry has been deleted
+ * </pre>
+ * {@link #open(File, long)} rebuilds the LRU order and the size from one sequential read of it
+ * instead of listing and sorting the whole directory, which is only done once to migrate a cache
+ * written without a journal. The journal is compacted when most of its lines have become redundant.
+ * <p>
+ * Each {@link Snapshot} guards its own state and files with its own monitor, so readers and writers
+ * of different keys never wait for each other. The cache monitor only guards the index and the journal,
+ * it is held for a map lookup or one journal line and is always acquired after a snapshot's, never before.
+ * Files are renamed aside while the snapshot is locked and deleted after it has been released.
+ * <p>
+ * There is at most one live snapshot per key. A snapshot which has been evicted or deleted while
+ * a caller still holds it hands its reads, writes and deletes over to the one the index holds for
+ * the key, or is put back into the index if there is none.
+ * <p>
  * Author: cxx
  * Date: 2018-8-17
  * GitHub: https://github.com/ccolorcat
@@ -51,11 +84,30 @@ public final class DiskCache {
     private static final String DIRTY_SUFFIX = ".tmp";
     private static final Pattern LEGAL_KEY_PATTERN = Pattern.compile("[a-z0-9_-]{1,64}");
 
+    static final String JOURNAL_FILE = "netbird.journal";
+    private static final String JOURNAL_FILE_TMP = JOURNAL_FILE + DIRTY_SUFFIX;
+    private static final String MAGIC = "cc.colorcat.netbird.cache.DiskCache";
+    private static final String VERSION = "1";
+    private static final String CLEAN = "CLEAN";
+    private static final String DIRTY = "DIRTY";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
     private final LinkedHashMap<String, Snapshot> map;
     private File directory;
 
     private long maxSize;
     private long size;
+    private Writer journalWriter;
+    private int redundantOpCount;
+    /**
+     * True from the submit of {@link #cleanupCallable} until it starts, so that a burst of reads
+     * doesn't queue it once each.
+     */
+    private boolean cleanupPending;
+    private final AtomicLong trashCount = new AtomicLong();
     private final ThreadPoolExecutor executor =
             new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
 
@@ -63,7 +115,13 @@ public final class DiskCache {
         @Override
         public Void call() throws Exception {
             synchronized (DiskCache.this) {
-                trimToSize(maxSize);
+                cleanupPending = false;
+            }
+            trimToSize(maxSize);
+            synchronized (DiskCache.this) {
+                if (journalRebuildRequired()) {
+                    rebuildJournal();
+                }
                 return null;
             }
         }
@@ -86,8 +144,12 @@ public final class DiskCache {
             File dir = new File(directory, "diskCache");
             if (dir.exists() || dir.mkdirs()) {
                 DiskCache cache = new DiskCache(dir, maxSize);
-                cache.cleanDirtyFile();
-                cache.readSnapshots();
+                if (!cache.readJournal()) {
+                    // no usable journal, migrate from the directory once
+                    cache.cleanDirtyFile();
+                    cache.readSnapshots();
+                    cache.rebuildJournal();
+                }
                 cache.asyncTrimToSize();
                 return cache;
             }
@@ -110,7 +172,7 @@ public final class DiskCache {
         File[] files = directory.listFiles(new FileFilter() {
             @Override
             public boolean accept(File file) {
-                return file.isFile();
+                return file.isFile() && LEGAL_KEY_PATTERN.matcher(file.getName()).matches();
             }
         });
         assert files != null;
@@ -118,31 +180,211 @@ public final class DiskCache {
         Collections.sort(list, new FileComparator());
         for (int i = 0, size = list.size(); i < size; ++i) {
             File file = list.get(i);
-            this.size += file.length();
             String name = file.getName();
-            map.put(name, new Snapshot(name));
+            Snapshot snapshot = new Snapshot(name);
+            snapshot.length = file.length();
+            this.size += snapshot.length;
+            map.put(name, snapshot);
         }
     }
 
-    public synchronized Snapshot getSnapshot(String key) {
-        checkKey(key);
-        Snapshot snapshot = map.get(key);
-        if (snapshot == null) {
-            snapshot = new Snapshot(key);
+    /**
+     * @return false if there is no journal or it can't be read, the cache is left empty then.
+     */
+    private boolean readJournal() throws IOException {
+        File journal = new File(directory, JOURNAL_FILE);
+        if (!journal.isFile()) {
+            return false;
+        }
+        Set<String> dirty = new HashSet<>();
+        int lineCount = 0;
+        final boolean torn = !endsWithNewLine(journal);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), ASCII), 8192);
+        try {
+            if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine())) {
+                return false;
+            }
+            String line = reader.readLine();
+            for (String next; line != null; line = next) {
+                next = reader.readLine();
+                // the last line was cut by a crash, what it recorded is lost at worst
+                if (next == null && torn) break;
+                if (readJournalLine(line, dirty)) {
+                    ++lineCount;
+                }
+            }
+        } catch (RuntimeException e) {
+            resetIndex();
+            return false;
+        } finally {
+            close(reader);
+        }
+        for (String key : dirty) {
+            // interrupted writes, they were never committed
+            deleteIfExists(new File(directory, key + DIRTY_SUFFIX));
+        }
+        redundantOpCount = lineCount - map.size();
+        if (torn) {
+            // appending to a cut line would corrupt the next one too
+            rebuildJournal();
+        } else {
+            journalWriter = newJournalWriter(journal);
+        }
+        return true;
+    }
+
+    private static boolean endsWithNewLine(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            if (length == 0L) return false;
+            raf.seek(length - 1L);
+            return raf.read() == '\n';
+        } finally {
+            close(raf);
+        }
+    }
+
+    private boolean readJournalLine(String line, Set<String> dirty) {
+        int first = line.indexOf(' ');
+        if (first == -1) return false;
+        String op = line.substring(0, first);
+        int second = line.indexOf(' ', first + 1);
+        String key = second == -1 ? line.substring(first + 1) : line.substring(first + 1, second);
+        if (!LEGAL_KEY_PATTERN.matcher(key).matches()) return false;
+        if (CLEAN.equals(op) && second != -1) {
+            Snapshot snapshot = map.remove(key);
+            if (snapshot == null) {
+                snapshot = new Snapshot(key);
+            } else if (snapshot.length > 0L) {
+                size -= snapshot.length;
+            }
+            snapshot.length = Long.parseLong(line.substring(second + 1));
+            size += snapshot.length;
             map.put(key, snapshot);
+            dirty.remove(key);
+        } else if (DIRTY.equals(op)) {
+            dirty.add(key);
+        } else if (READ.equals(op)) {
+            map.get(key);
+        } else if (REMOVE.equals(op)) {
+            Snapshot snapshot = map.remove(key);
+            if (snapshot != null && snapshot.length > 0L) {
+                size -= snapshot.length;
+            }
+            dirty.remove(key);
+        } else {
+            return false;
         }
-        return snapshot;
+        return true;
     }
 
-    void clear() throws IOException {
+    /**
+     * Writes a journal holding only the current entries, in LRU order, and replaces the old one.
+     */
+    private void rebuildJournal() throws IOException {
+        close(journalWriter);
+        File journal = new File(directory, JOURNAL_FILE);
+        File tmp = new File(directory, JOURNAL_FILE_TMP);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), ASCII), 8192);
+        try {
+            writer.write(MAGIC);
+            writer.write('\n');
+            writer.write(VERSION);
+            writer.write('\n');
+            for (Snapshot snapshot : map.values()) {
+                if (snapshot.writing) {
+                    writer.write(DIRTY + ' ' + snapshot.key + '\n');
+                }
+                if (snapshot.length >= 0L) {
+                    writer.write(CLEAN + ' ' + snapshot.key + ' ' + snapshot.length + '\n');
+                }
+            }
+        } finally {
+            close(writer);
+        }
+        renameTo(tmp, journal, true);
+        journalWriter = newJournalWriter(journal);
+        redundantOpCount = 0;
+    }
+
+    private boolean journalRebuildRequired() {
+        return journalWriter == null
+                || (redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOpCount >= map.size());
+    }
+
+    /**
+     * Appends one operation to the journal. A journal that can't be written is dropped and rebuilt
+     * by the next cleanup, the entries themselves are not affected.
+     */
+    private void journal(String op, Snapshot snapshot, boolean flush) {
+        if (journalWriter == null) {
+            return;
+        }
+        try {
+            journalWriter.write(op);
+            journalWriter.write(' ');
+            journalWriter.write(snapshot.key);
+            if (CLEAN.equals(op)) {
+                journalWriter.write(' ');
+                journalWriter.write(Long.toString(snapshot.length));
+            }
+            journalWriter.write('\n');
+            if (flush) journalWriter.flush();
+        } catch (IOException e) {
+            dropJournal();
+        }
+        ++redundantOpCount;
+    }
+
+    private void flushJournal() {
+        if (journalWriter != null) {
+            try {
+                journalWriter.flush();
+            } catch (IOException e) {
+                dropJournal();
+            }
+        }
+    }
+
+    private void dropJournal() {
+        close(journalWriter);
+        journalWriter = null;
+    }
+
+    private void resetIndex() {
+        map.clear();
+        size = 0L;
+    }
+
+    private static Writer newJournalWriter(File journal) throws FileNotFoundException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), ASCII), 8192);
+    }
+
+    public Snapshot getSnapshot(String key) {
+        checkKey(key);
+        synchronized (this) {
+            Snapshot snapshot = map.get(key);
+            if (snapshot == null) {
+                snapshot = new Snapshot(key);
+                map.put(key, snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    synchronized void clear() throws IOException {
+        dropJournal();
         deleteContents(directory);
+        resetIndex();
+        rebuildJournal();
     }
 
     long maxSize() {
         return maxSize;
     }
 
-    long size() {
+    synchronized long size() {
         return size;
     }
 
@@ -153,61 +395,180 @@ public final class DiskCache {
         }
     }
 
-    private void completeWriteSnapshot(Snapshot snapshot, boolean success) throws IOException {
+    /**
+     * Must be called with the snapshot locked, the files to delete once it has been released are added to {@code trash}.
+     */
+    private void completeWriteSnapshot(Snapshot snapshot, boolean success, List<File> trash) throws IOException {
         try {
             File dirty = snapshot.getDirtyFile();
-            File clean = snapshot.getCleanFile();
             if (success) {
                 if (dirty.exists()) {
-                    long oldLength = clean.length();
+                    long oldLength = Math.max(snapshot.length, 0L);
                     long newLength = dirty.length();
-                    renameTo(dirty, clean, true);
-                    size = size - oldLength + newLength;
-//                    asyncTrimToSize();
+                    replace(dirty, snapshot.getCleanFile());
+                    snapshot.length = newLength;
+                    onCommitted(snapshot, newLength - oldLength);
                 }
             } else {
-                deleteIfExists(dirty);
+                // the next write reuses the dirty file as soon as the snapshot is released
+                addIfNotNull(trash, moveToTrash(dirty));
+                // the previous content, if any, is still valid
+                onJournal(snapshot.length >= 0L ? CLEAN : REMOVE, snapshot, true);
             }
         } finally {
             snapshot.writing = false;
             snapshot.committed = false;
             snapshot.hasErrors = false;
             if (snapshot.requiredDelete) {
-                deleteSnapshot(snapshot);
+                deleteSnapshot(snapshot, trash);
             }
             asyncTrimToSize();
         }
     }
 
-    private void deleteSnapshot(Snapshot snapshot) throws IOException {
-        File clean = snapshot.getCleanFile();
-        if (clean.exists()) {
-            long length = clean.length();
-            deleteIfExists(clean);
-            if (map.remove(snapshot.key) != null) {
-                size -= length;
+    /**
+     * Must be called with the snapshot locked, the clean file is added to {@code trash}.
+     */
+    private void deleteSnapshot(Snapshot snapshot, List<File> trash) throws IOException {
+        File clean = moveToTrash(snapshot.getCleanFile());
+        if (clean != null) {
+            trash.add(clean);
+            onRemoved(snapshot, true);
+        }
+        // fulfilled, a later write must not be deleted for it
+        snapshot.requiredDelete = false;
+    }
+
+    /**
+     * @return the snapshot the index holds for the key of {@code snapshot}, which is put back into
+     * the index and returned itself if there is none.
+     */
+    private synchronized Snapshot liveSnapshot(Snapshot snapshot) {
+        Snapshot live = map.get(snapshot.key);
+        if (live == null) {
+            map.put(snapshot.key, snapshot);
+            live = snapshot;
+        }
+        return live;
+    }
+
+    private synchronized void onCommitted(Snapshot snapshot, long delta) {
+        Snapshot other = map.get(snapshot.key);
+        if (other != snapshot) {
+            // the index has been cleared while it was being written, it replaces whatever came since
+            if (other != null && other.length > 0L) {
+                size -= other.length;
+                other.length = -1L;
             }
+            map.put(snapshot.key, snapshot);
+        }
+        size += delta;
+        journal(CLEAN, snapshot, true);
+    }
+
+    private synchronized void onRemoved(Snapshot snapshot, boolean flush) {
+        if (map.get(snapshot.key) == snapshot) {
+            map.remove(snapshot.key);
+        }
+        if (snapshot.length >= 0L) {
+            size -= snapshot.length;
+            journal(REMOVE, snapshot, flush);
         }
+        snapshot.length = -1L;
     }
 
-    private void asyncTrimToSize() {
-        if (size > maxSize) {
+    private synchronized void onJournal(String op, Snapshot snapshot, boolean flush) {
+        journal(op, snapshot, flush);
+    }
+
+    /**
+     * Records a read, hits alone make the journal grow, so they may trigger its compaction too.
+     */
+    private synchronized void onRead(Snapshot snapshot) {
+        journal(READ, snapshot, false);
+        if (journalRebuildRequired()) {
+            submitCleanup();
+        }
+    }
+
+    private synchronized void asyncTrimToSize() {
+        if (size > maxSize || journalRebuildRequired()) {
+            submitCleanup();
+        }
+    }
+
+    /**
+     * Must be called with the cache locked.
+     */
+    private void submitCleanup() {
+        if (!cleanupPending) {
+            cleanupPending = true;
             executor.submit(cleanupCallable);
         }
     }
 
     private void trimToSize(long maxSize) throws IOException {
-        Iterator<Map.Entry<String, Snapshot>> iterator = map.entrySet().iterator();
-        while (size > maxSize && iterator.hasNext()) {
-            Map.Entry<String, Snapshot> toEvict = iterator.next();
-            Snapshot value = toEvict.getValue();
-            if (value.readCount == 0 && !value.writing) {
-                File clean = value.getCleanFile();
-                long cleanLength = clean.length();
-                deleteIfExists(clean);
-                size -= cleanLength;
-                iterator.remove();
+        List<Snapshot> candidates = new ArrayList<>();
+        List<File> trash = new ArrayList<>();
+        for (boolean evicted = true; evicted; ) {
+            candidates.clear();
+            synchronized (this) {
+                long excess = size - maxSize;
+                for (Snapshot snapshot : map.values()) {
+                    if (excess <= 0L) break;
+                    // a hint only, checked again with the snapshot locked
+                    if (snapshot.readCount == 0 && !snapshot.writing) {
+                        candidates.add(snapshot);
+                        excess -= Math.max(snapshot.length, 0L);
+                    }
+                }
             }
+            evicted = false;
+            for (int i = 0, size = candidates.size(); i < size; ++i) {
+                Snapshot snapshot = candidates.get(i);
+                synchronized (snapshot) {
+                    if (snapshot.readCount == 0 && !snapshot.writing) {
+                        addIfNotNull(trash, moveToTrash(snapshot.getCleanFile()));
+                        onRemoved(snapshot, false);
+                        evicted = true;
+                    }
+                }
+            }
+            deleteTrash(trash);
+            trash.clear();
+        }
+        synchronized (this) {
+            flushJournal();
+        }
+    }
+
+    /**
+     * Renames {@code file} to a name no key can take, so that it can be deleted with no lock held.
+     *
+     * @return the file to delete, null if there was no such file.
+     */
+    private File moveToTrash(File file) throws IOException {
+        File trash = new File(directory, file.getName() + '.' + trashCount.incrementAndGet() + DIRTY_SUFFIX);
+        if (file.renameTo(trash)) {
+            return trash;
+        }
+        // missing, or it can't be moved aside on this platform
+        deleteIfExists(file);
+        return null;
+    }
+
+    private static void deleteTrash(List<File> trash) {
+        for (int i = 0, size = trash.size(); i < size; ++i) {
+            File file = trash.get(i);
+            if (!file.delete() && file.exists()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private static void addIfNotNull(List<File> files, File file) {
+        if (file != null) {
+            files.add(file);
         }
     }
 
@@ -215,9 +576,17 @@ public final class DiskCache {
     public final class Snapshot {
         private String key;
 
-        private int readCount = 0;
+        /*
+         * Guarded by this snapshot, volatile so that trimToSize() and rebuildJournal() can read them
+         * under the cache monitor alone.
+         */
+        private volatile int readCount = 0;
+        /**
+         * The length of the clean file as recorded in the journal, -1L if there is none.
+         */
+        private volatile long length = -1L;
+        private volatile boolean writing = false;
 
-        private boolean writing = false;
         private boolean committed = false;
         private boolean hasErrors = false;
 
@@ -228,19 +597,58 @@ public final class DiskCache {
         }
 
         public InputStream getInputStream() {
-            synchronized (DiskCache.this) {
+            Snapshot live;
+            synchronized (this) {
+                if ((live = liveSnapshot(this)) == this) ++readCount;
+            }
+            if (live != this) return live.getInputStream();
+            // the clean file is neither replaced nor deleted while it is being read
+            try {
+                SnapshotInputStream input = new SnapshotInputStream(new FileInputStream(getCleanFile()));
+                onRead(this);
+                return input;
+            } catch (FileNotFoundException e) {
+                releaseRead();
+                return null;
+            }
+        }
+
+        /**
+         * Maps the clean file from {@code offset} to its end, the bytes are read straight from the
+         * page cache. Until the stream is closed or read to the end the snapshot counts as being read,
+         * so it is neither evicted nor replaced meanwhile.
+         *
+         * @return null if there is no clean file.
+         */
+        public InputStream getMappedInputStream(long offset) throws IOException {
+            Snapshot live;
+            synchronized (this) {
+                if ((live = liveSnapshot(this)) == this) ++readCount;
+            }
+            if (live != this) return live.getMappedInputStream(offset);
+            try {
+                RandomAccessFile raf = new RandomAccessFile(getCleanFile(), "r");
                 try {
-                    ++readCount;
-                    return new SnapshotInputStream(new FileInputStream(getCleanFile()));
-                } catch (FileNotFoundException e) {
-                    --readCount;
-                    return null;
+                    FileChannel channel = raf.getChannel();
+                    // the mapping stays valid after the channel has been closed
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, channel.size() - offset);
+                    onRead(this);
+                    return new MappedInputStream(buffer);
+                } finally {
+                    close(raf);
                 }
+            } catch (FileNotFoundException e) {
+                releaseRead();
+                return null;
+            } catch (IOException | RuntimeException e) {
+                releaseRead();
+                throw e;
             }
         }
 
         long getContentLength() {
-            return getCleanFile().length();
+            long length = this.length;
+            return length >= 0L ? length : getCleanFile().length();
         }
 
         long getLastModified() {
@@ -248,34 +656,48 @@ public final class DiskCache {
         }
 
         public OutputStream getOutputStream() {
-            synchronized (DiskCache.this) {
-                if (!writing) {
+            Snapshot live;
+            synchronized (this) {
+                if (writing) {
+                    return null;
+                }
+                // two snapshots of one key must never write the same dirty file
+                if ((live = liveSnapshot(this)) == this) {
                     try {
                         FileOutputStream fos = new FileOutputStream(getDirtyFile());
                         writing = true;
+                        onJournal(DIRTY, this, true);
                         return new SnapshotOutputStream(fos);
                     } catch (FileNotFoundException e) {
                         writing = false;
                         throw new IllegalStateException(directory + " does not exist.");
                     }
                 }
-                return null;
             }
+            return live.getOutputStream();
         }
 
         public void requireDelete() throws IOException {
-            synchronized (DiskCache.this) {
-                if (!requiredDelete) {
+            List<File> trash = new ArrayList<>(1);
+            Snapshot live;
+            synchronized (this) {
+                if ((live = liveSnapshot(this)) == this && !requiredDelete) {
                     requiredDelete = true;
                     if (readCount == 0 && !writing) {
-                        deleteSnapshot(this);
+                        deleteSnapshot(this, trash);
                     }
                 }
             }
+            if (live != this) {
+                live.requireDelete();
+                return;
+            }
+            deleteTrash(trash);
         }
 
         private void completeRead() throws IOException {
-            synchronized (DiskCache.this) {
+            List<File> trash = null;
+            synchronized (this) {
                 --readCount;
                 if (readCount < 0) {
                     throw new IllegalStateException("readCount < 0");
@@ -283,28 +705,46 @@ public final class DiskCache {
                 if (readCount == 0) {
                     if (writing) {
                         if (committed) {
-                            completeWriteSnapshot(this, !hasErrors);
+                            trash = new ArrayList<>(2);
+                            completeWriteSnapshot(this, !hasErrors, trash);
                         }
                     } else {
                         if (requiredDelete) {
-                            deleteSnapshot(this);
+                            trash = new ArrayList<>(1);
+                            deleteSnapshot(this, trash);
                         }
                     }
                 }
             }
+            if (trash != null) {
+                deleteTrash(trash);
+            }
+        }
+
+        /**
+         * Undoes the count of a read which failed to open, a write or delete may have been deferred to it.
+         */
+        private void releaseRead() {
+            try {
+                completeRead();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
 
         private void commitWrite() throws IOException {
-            synchronized (DiskCache.this) {
+            List<File> trash = new ArrayList<>(2);
+            synchronized (this) {
                 if (writing && !committed) {
                     committed = true;
                     if (readCount == 0) {
-                        completeWriteSnapshot(this, !hasErrors);
+                        completeWriteSnapshot(this, !hasErrors, trash);
                     }
                 } else {
                     throw new IllegalStateException("writing = " + writing + ", committed = " + committed);
                 }
             }
+            deleteTrash(trash);
         }
 
         private File getCleanFile() {
@@ -348,6 +788,83 @@ public final class DiskCache {
         }
 
 
+        private class MappedInputStream extends InputStream {
+            private final ByteBuffer buffer;
+            private boolean released = false;
+            private boolean closed = false;
+
+            private MappedInputStream(ByteBuffer buffer) {
+                this.buffer = buffer;
+                if (!buffer.hasRemaining()) {
+                    release();
+                }
+            }
+
+            @Override
+            public int read() throws IOException {
+                checkNotClosed();
+                if (!buffer.hasRemaining()) return -1;
+                int b = buffer.get() & 0xFF;
+                releaseIfDrained();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                checkNotClosed();
+                if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+                if (len == 0) return 0;
+                if (!buffer.hasRemaining()) return -1;
+                int length = Math.min(len, buffer.remaining());
+                buffer.get(b, off, length);
+                releaseIfDrained();
+                return length;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                checkNotClosed();
+                int length = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+                buffer.position(buffer.position() + length);
+                releaseIfDrained();
+                return length;
+            }
+
+            @Override
+            public int available() {
+                return closed ? 0 : buffer.remaining();
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+                release();
+            }
+
+            private void checkNotClosed() throws IOException {
+                if (closed) throw new IOException("closed");
+            }
+
+            private void releaseIfDrained() {
+                // a reader which stops at the known length often doesn't close the stream
+                if (!buffer.hasRemaining()) {
+                    release();
+                }
+            }
+
+            private void release() {
+                if (!released) {
+                    released = true;
+                    try {
+                        completeRead();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+
         private class SnapshotOutputStream extends FilterOutputStream {
             private boolean closed = false;
 
@@ -414,6 +931,15 @@ public final class DiskCache {
         }
     }
 
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
     private static void deleteIfExists(File... files) throws IOException {
         for (File file : files) {
             deleteIfExists(file);
@@ -439,6 +965,15 @@ public final class DiskCache {
         }
     }
 
+    /**
+     * Renames over {@code to} where the platform allows it, so the old file isn't deleted in place.
+     */
+    private static void replace(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            renameTo(from, to, true);
+        }
+    }
+
     private static void renameTo(File from, File to, boolean deleteDest) throws IOException {
         if (deleteDest) {
             deleteIfExists(to);
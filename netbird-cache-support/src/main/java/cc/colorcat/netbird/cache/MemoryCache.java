@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cc.colorcat.netbird.Headers;
+
+/**
+ * A bounded in-memory tier of cached responses, weighted by their size in bytes and evicted in
+ * LRU order. Entries heavier than an eighth of the budget are not kept, they would push out
+ * many hot small ones and the disk tier serves them well anyway.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public final class MemoryCache {
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(0, 0.75F, true);
+    private final long maxSize;
+    private long size = 0L;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    public MemoryCache(long maxSize) {
+        if (maxSize < 1L) throw new IllegalArgumentException("maxSize(" + maxSize + ") < 1");
+        this.maxSize = maxSize;
+    }
+
+    public synchronized Entry get(String key) {
+        Entry entry = map.get(key);
+        if (entry != null) {
+            ++hitCount;
+        } else {
+            ++missCount;
+        }
+        return entry;
+    }
+
+    /**
+     * Keeps {@code content} as is, it must not be modified afterwards.
+     *
+     * @return false if the entry is too heavy to be kept, a previous one for {@code key} is removed then.
+     */
+    public synchronized boolean put(String key, Headers headers, byte[] content) {
+        Entry entry = new Entry(headers, content);
+        Entry previous = map.remove(key);
+        if (previous != null) {
+            size -= previous.weight;
+        }
+        if (entry.weight > maxEntrySize()) {
+            return false;
+        }
+        map.put(key, entry);
+        size += entry.weight;
+        trimToSize(maxSize);
+        return true;
+    }
+
+    public synchronized void remove(String key) {
+        Entry entry = map.remove(key);
+        if (entry != null) {
+            size -= entry.weight;
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        size = 0L;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    long maxEntrySize() {
+        return maxSize >> 3;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized int hitCount() {
+        return hitCount;
+    }
+
+    public synchronized int missCount() {
+        return missCount;
+    }
+
+    private void trimToSize(long maxSize) {
+        Iterator<Map.Entry<String, Entry>> iterator = map.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().getValue().weight;
+            iterator.remove();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MemoryCache{" +
+                "maxSize=" + maxSize +
+                ", size=" + size +
+                ", count=" + map.size() +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                '}';
+    }
+
+
+    public static final class Entry {
+        public final Headers headers;
+        final byte[] content;
+        final long weight;
+
+        private Entry(Headers headers, byte[] content) {
+            this.headers = headers;
+            this.content = content;
+            this.weight = content.length + weigh(headers);
+        }
+
+        public int contentLength() {
+            return content.length;
+        }
+
+        private static long weigh(Headers headers) {
+            // two bytes a char plus the overhead of the strings and the lists holding them
+            long weight = 0L;
+            for (int i = 0, size = headers.size(); i < size; ++i) {
+                weight += ((headers.name(i).length() + headers.value(i).length()) << 1) + 64;
+            }
+            return weight;
+        }
+    }
+}
@@ -18,10 +18,18 @@ package cc.colorcat.parser.gson;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.internal.$Gson$Types;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import cc.colorcat.netbird.JsonParser;
 import cc.colorcat.netbird.NetworkData;
@@ -34,18 +42,18 @@ import cc.colorcat.netbird.StateIOException;
  * GitHub: https://github.com/ccolorcat
  */
 public abstract class GsonParser<T> extends JsonParser<T> {
-    private static Gson gson = new GsonBuilder().create();
+    private static volatile Adapters adapters = new Adapters(new GsonBuilder().create());
 
     public static void setGson(Gson gson) {
         if (gson == null) throw new IllegalArgumentException("gson == null");
-        GsonParser.gson = gson;
+        GsonParser.adapters = new Adapters(gson);
     }
 
     @Override
     public NetworkData<? extends T> parse(Response response) throws IOException {
         try {
             Reader reader = response.responseBody().reader(charsetIfAbsent());
-            T data = GsonParser.gson.fromJson(reader, $Gson$Types.canonicalize(generateType()));
+            T data = GsonParser.adapters.read(reader, generateType());
             if (data != null) {
                 return NetworkData.newSuccess(data);
             }
@@ -54,4 +62,59 @@ public abstract class GsonParser<T> extends JsonParser<T> {
             throw new StateIOException(response.responseCode(), response.responseMsg(), e);
         }
     }
+
+    static Adapters adapters() {
+        return adapters;
+    }
+
+    /**
+     * The {@link TypeAdapter}s obtained from one {@link Gson}, one per target type.
+     * Replaced as a whole by {@link #setGson(Gson)}.
+     */
+    static final class Adapters {
+        private final Gson gson;
+        private final ConcurrentMap<Type, TypeAdapter<?>> adapters = new ConcurrentHashMap<>();
+
+        private Adapters(Gson gson) {
+            this.gson = gson;
+        }
+
+        /**
+         * Same semantics as {@link Gson#fromJson(Reader, Type)}: lenient, null for an empty document
+         * and the whole document must be consumed.
+         */
+        @SuppressWarnings("unchecked")
+        private <T> T read(Reader reader, Type type) throws IOException {
+            TypeAdapter<?> adapter = get(type);
+            JsonReader jsonReader = newJsonReader(reader);
+            try {
+                jsonReader.peek();
+            } catch (EOFException e) {
+                return null;
+            }
+            T data = (T) adapter.read(jsonReader);
+            if (data != null && jsonReader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonIOException("JSON document was not fully consumed.");
+            }
+            return data;
+        }
+
+        TypeAdapter<?> get(Type type) {
+            TypeAdapter<?> adapter = adapters.get(type);
+            if (adapter == null) {
+                adapter = gson.getAdapter(TypeToken.get(type));
+                adapters.putIfAbsent(type, adapter);
+            }
+            return adapter;
+        }
+
+        /**
+         * @return a lenient {@link JsonReader} configured by the {@link Gson}, as {@link Gson#fromJson(Reader, Type)} reads.
+         */
+        JsonReader newJsonReader(Reader reader) {
+            JsonReader jsonReader = gson.newJsonReader(reader);
+            jsonReader.setLenient(true);
+            return jsonReader;
+        }
+    }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.parser.gson;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.lang.reflect.Type;
+
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.StreamingParser;
+
+/**
+ * Reads a json array element by element with gson's {@link JsonReader}, sharing the
+ * {@link TypeAdapter}s of {@link GsonParser}.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public abstract class GsonStreamingParser<E> extends StreamingParser<E> {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void readElements(Response response, Type elementType, Sink<? super E> sink) throws Exception {
+        final GsonParser.Adapters adapters = GsonParser.adapters();
+        final TypeAdapter<?> adapter = adapters.get(elementType);
+        final JsonReader reader = adapters.newJsonReader(response.responseBody().reader(charsetIfAbsent()));
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                sink.accept((E) adapter.read(reader));
+            }
+            reader.endArray();
+        } finally {
+            reader.close();
+        }
+    }
+}
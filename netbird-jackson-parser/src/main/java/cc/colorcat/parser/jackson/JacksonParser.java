@@ -17,14 +17,18 @@
 package cc.colorcat.parser.jackson;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import java.io.IOException;
-import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import cc.colorcat.netbird.JsonParser;
 import cc.colorcat.netbird.NetworkData;
 import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.ResponseBody;
 import cc.colorcat.netbird.StateIOException;
 
 /**
@@ -33,18 +37,42 @@ import cc.colorcat.netbird.StateIOException;
  * GitHub: https://github.com/ccolorcat
  */
 public abstract class JacksonParser<T> extends JsonParser<T> {
-    private static ObjectMapper mapper = new ObjectMapper();
+    private static volatile Readers readers = new Readers(new ObjectMapper());
 
     public static void setObjectMapper(ObjectMapper mapper) {
         if (mapper == null) throw new IllegalArgumentException("mapper == null");
-        JacksonParser.mapper = mapper;
+        JacksonParser.readers = new Readers(mapper);
+    }
+
+    private final boolean parseBytes;
+
+    /**
+     * Hands UTF-8 bodies to jackson as raw bytes, see {@link #JacksonParser(boolean)}.
+     */
+    protected JacksonParser() {
+        this(true);
+    }
+
+    /**
+     * @param parseBytes true to hand UTF-8 bodies to jackson as raw bytes, skipping the
+     *                   {@link java.io.InputStreamReader} decode step, false to always parse from
+     *                   {@link ResponseBody#reader(Charset)}.
+     */
+    protected JacksonParser(boolean parseBytes) {
+        this.parseBytes = parseBytes;
     }
 
     @Override
     public NetworkData<? extends T> parse(Response response) throws IOException {
         try {
-            Reader reader = response.responseBody().reader(charsetIfAbsent());
-            T data = mapper.readValue(reader, TypeFactory.defaultInstance().constructType(generateType()));
+            final ResponseBody body = response.responseBody();
+            final ObjectReader reader = reader(generateType());
+            T data;
+            if (parseBytes && isUtf8(body, charsetIfAbsent())) {
+                data = reader.readValue(body.stream());
+            } else {
+                data = reader.readValue(body.reader(charsetIfAbsent()));
+            }
             if (data != null) {
                 return NetworkData.newSuccess(data);
             }
@@ -53,4 +81,39 @@ public abstract class JacksonParser<T> extends JsonParser<T> {
             throw new StateIOException(response.responseCode(), response.responseMsg(), e);
         }
     }
+
+    static ObjectReader reader(Type type) {
+        return readers.get(type);
+    }
+
+    /**
+     * @return true if {@code body} is UTF-8 and can be handed to jackson as raw bytes.
+     */
+    static boolean isUtf8(ResponseBody body, Charset charsetIfAbsent) {
+        Charset charset = body.charset();
+        if (charset == null) charset = charsetIfAbsent;
+        return "UTF-8".equals(charset.name());
+    }
+
+    /**
+     * The {@link ObjectReader}s built from one {@link ObjectMapper}, one per target type.
+     * Replaced as a whole by {@link #setObjectMapper(ObjectMapper)}.
+     */
+    private static final class Readers {
+        private final ObjectMapper mapper;
+        private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
+        private Readers(ObjectMapper mapper) {
+            this.mapper = mapper;
+        }
+
+        private ObjectReader get(Type type) {
+            ObjectReader reader = readers.get(type);
+            if (reader == null) {
+                reader = mapper.readerFor(mapper.getTypeFactory().constructType(type));
+                readers.putIfAbsent(type, reader);
+            }
+            return reader;
+        }
+    }
 }
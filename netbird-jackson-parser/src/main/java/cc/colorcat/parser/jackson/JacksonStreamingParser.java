@@ -0,0 +1,80 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.parser.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.EOFException;
+import java.lang.reflect.Type;
+
+import cc.colorcat.netbird.Response;
+import cc.colorcat.netbird.ResponseBody;
+import cc.colorcat.netbird.StreamingParser;
+
+/**
+ * Reads a json array element by element with jackson's tokenizer, sharing the
+ * {@link ObjectReader}s of {@link JacksonParser}.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public abstract class JacksonStreamingParser<E> extends StreamingParser<E> {
+    private final boolean parseBytes;
+
+    /**
+     * Hands UTF-8 bodies to jackson as raw bytes, see {@link #JacksonStreamingParser(boolean)}.
+     */
+    protected JacksonStreamingParser() {
+        this(true);
+    }
+
+    /**
+     * @param parseBytes true to hand UTF-8 bodies to jackson as raw bytes, false to always read
+     *                   through {@link ResponseBody#reader(java.nio.charset.Charset)}.
+     */
+    protected JacksonStreamingParser(boolean parseBytes) {
+        this.parseBytes = parseBytes;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void readElements(Response response, Type elementType, Sink<? super E> sink) throws Exception {
+        final ResponseBody body = response.responseBody();
+        final ObjectReader reader = JacksonParser.reader(elementType);
+        final JsonParser parser;
+        if (parseBytes && JacksonParser.isUtf8(body, charsetIfAbsent())) {
+            parser = reader.getFactory().createParser(body.stream());
+        } else {
+            parser = reader.getFactory().createParser(body.reader(charsetIfAbsent()));
+        }
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalStateException("Expected a json array but was " + parser.getCurrentToken());
+            }
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (token == null) throw new EOFException("Unterminated json array");
+                sink.accept((E) reader.readValue(parser));
+            }
+        } finally {
+            parser.close();
+        }
+    }
+}
@@ -16,7 +16,9 @@
 
 package cc.colorcat.netbird.logging;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -30,6 +32,7 @@ import cc.colorcat.netbird.NameAndValue;
 import cc.colorcat.netbird.NetBird;
 import cc.colorcat.netbird.PairReader;
 import cc.colorcat.netbird.Platform;
+import cc.colorcat.netbird.ReplayableBody;
 import cc.colorcat.netbird.Request;
 import cc.colorcat.netbird.Response;
 import cc.colorcat.netbird.ResponseBody;
@@ -43,8 +46,10 @@ public class LoggingTailInterceptor implements Interceptor {
     private static final String TAG = NetBird.class.getSimpleName();
     private static final String LINE = buildString(94, '-');
     private static final String HALF_LINE = buildString(38, '-');
+    private static final Pattern UNICODE = Pattern.compile("\\\\u[0-9a-fA-F]{4}");
     private final Charset charsetIfAbsent;
     private final boolean deUnicode;
+    private final int previewBytes;
 
     public LoggingTailInterceptor() {
         this(Charset.forName("UTF-8"), false);
@@ -55,8 +60,19 @@ public class LoggingTailInterceptor implements Interceptor {
     }
 
     public LoggingTailInterceptor(Charset charsetIfAbsent, boolean deUnicode) {
+        this(charsetIfAbsent, deUnicode, 0);
+    }
+
+    /**
+     * @param previewBytes if positive, the content is no longer buffered, only its first
+     *                     {@code previewBytes} bytes are copied aside while the body streams to the
+     *                     parser, the log is written once they have been read, or the body has been
+     *                     read to the end or closed. Otherwise the whole content is logged.
+     */
+    public LoggingTailInterceptor(Charset charsetIfAbsent, boolean deUnicode, int previewBytes) {
         this.charsetIfAbsent = charsetIfAbsent;
         this.deUnicode = deUnicode;
+        this.previewBytes = previewBytes;
     }
 
     @Override
@@ -85,21 +101,34 @@ public class LoggingTailInterceptor implements Interceptor {
         if (body != null) {
             final String contentType = body.contentType();
             if (contentType != null && contentFilter(contentType)) {
-                final byte[] bytes = body.bytes();
-                Charset charset = body.charset();
-                if (charset == null) charset = charsetIfAbsent;
-                final String content = new String(bytes, charset);
-                builder.append("\nresponse content --> ").append(formatResponse(deUnicode ? decode(content) : content, contentType));
-                final ResponseBody newBody = ResponseBody.create(bytes, contentType, charset);
+                if (previewBytes > 0) {
+                    // logged by the stream once the preview has been read
+                    final Charset charset = body.charset() != null ? body.charset() : charsetIfAbsent;
+                    final InputStream preview = new PreviewInputStream(body.stream(), builder, contentType, charset, body.contentLength());
+                    return response.newBuilder()
+                            .responseBody(ResponseBody.create(preview, contentType, body.contentLength(), body.charset()))
+                            .build();
+                }
+                final ReplayableBody newBody = ReplayableBody.create(body);
+                final String content = newBody.string(charsetIfAbsent);
+                appendContent(builder, content, contentType);
                 response = response.newBuilder()
                         .setHeader(Headers.CONTENT_LENGTH, Long.toString(newBody.contentLength()))
                         .responseBody(newBody)
                         .build();
             }
         }
+        log(builder);
+        return response;
+    }
+
+    private void appendContent(StringBuilder builder, String content, String contentType) {
+        builder.append("\nresponse content --> ").append(formatResponse(deUnicode ? decode(content) : content, contentType));
+    }
+
+    private static void log(StringBuilder builder) {
         builder.append('\n').append('<').append(LINE);
         Platform.get().logger().log(TAG, builder.toString(), Level.INFO);
-        return response;
     }
 
     protected boolean contentFilter(String contentType) {
@@ -132,7 +161,7 @@ public class LoggingTailInterceptor implements Interceptor {
 
     private static String decode(String unicode) {
         StringBuilder builder = new StringBuilder(unicode.length());
-        Matcher matcher = Pattern.compile("\\\\u[0-9a-fA-F]{4}").matcher(unicode);
+        Matcher matcher = UNICODE.matcher(unicode);
         int last = 0;
         for (int start, end = 0; matcher.find(end); last = end) {
             start = matcher.start();
@@ -142,4 +171,82 @@ public class LoggingTailInterceptor implements Interceptor {
         }
         return builder.append(unicode.substring(last)).toString();
     }
+
+
+    /**
+     * Hands every byte on untouched and keeps a copy of the first {@link #previewBytes} ones,
+     * the log is written exactly once.
+     */
+    private final class PreviewInputStream extends FilterInputStream {
+        private final StringBuilder builder;
+        private final String contentType;
+        private final Charset charset;
+        private final long contentLength;
+        private final byte[] preview;
+        private int count = 0;
+        private boolean logged = false;
+
+        private PreviewInputStream(InputStream in, StringBuilder builder, String contentType, Charset charset, long contentLength) {
+            super(in);
+            this.builder = builder;
+            this.contentType = contentType;
+            this.charset = charset;
+            this.contentLength = contentLength;
+            this.preview = new byte[contentLength >= 0L ? (int) Math.min(previewBytes, contentLength) : previewBytes];
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b == -1) {
+                logPreview(false);
+            } else if (count < preview.length) {
+                preview[count++] = (byte) b;
+                if (count == preview.length) logPreview(contentLength != count);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int length = super.read(b, off, len);
+            if (length == -1) {
+                logPreview(false);
+            } else if (count < preview.length) {
+                final int copy = Math.min(length, preview.length - count);
+                System.arraycopy(b, off, preview, count, copy);
+                count += copy;
+                if (count == preview.length) logPreview(contentLength != count);
+            }
+            return length;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes are never seen, log what has been read so far
+            logPreview(true);
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                logPreview(contentLength != count);
+            }
+        }
+
+        private void logPreview(boolean truncated) {
+            if (logged) return;
+            logged = true;
+            appendContent(builder, new String(preview, 0, count, charset), contentType);
+            if (truncated) {
+                builder.append("\n... (first ").append(count).append(" bytes");
+                if (contentLength >= 0L) builder.append(" of ").append(contentLength);
+                builder.append(')');
+            }
+            log(builder);
+        }
+    }
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird;
+
+/**
+ * What to do with an asynchronous call when {@link NetBird.Builder#maxWaiting(int)} calls are already waiting.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public enum Backpressure {
+    /**
+     * Fails the call at once with {@link HttpStatus#CODE_TOO_MANY_REQUESTS}.
+     */
+    FAIL_FAST,
+    /**
+     * Blocks the enqueuing thread until a waiting call is promoted or canceled, calls must not be
+     * enqueued from the main thread or from a callback with this policy.
+     */
+    BLOCK,
+    /**
+     * Fails a waiting call of lower {@link Priority} with {@link HttpStatus#CODE_TOO_MANY_REQUESTS}
+     * to make room, or the new call itself if there is no such one.
+     */
+    SHED_BY_PRIORITY
+}
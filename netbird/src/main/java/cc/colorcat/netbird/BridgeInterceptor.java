@@ -37,7 +37,15 @@ final class BridgeInterceptor implements Interceptor {
 
     @Override
     public Response intercept(Chain chain) throws IOException {
-        final Request.Builder builder = chain.request().newBuilder();
+        final Request request = prepare(chain.request());
+        return finish(request, chain.proceed(request));
+    }
+
+    /**
+     * @return the request resolved against the base url, ready to be sent.
+     */
+    Request prepare(Request request) throws IOException {
+        final Request.Builder builder = request.newBuilder();
         URI uri = URI.create(Utils.emptyElse(builder.url(), baseUrl));
         final String path = builder.path();
         if (!Utils.isEmpty(path)) uri = uri.resolve(path);
@@ -71,12 +79,17 @@ final class BridgeInterceptor implements Interceptor {
                 .addHeaderIfNot("Host", uri.getHost())
                 .addHeaderIfNot("Connection", "Keep-Alive")
                 .addHeaderIfNot("User-Agent", Version.userAgent());
+        return builder.build().freeze();
+    }
 
-        Response response = chain.proceed(builder.build().freeze());
+    /**
+     * @param request the request returned by {@link #prepare(Request)}.
+     */
+    Response finish(Request request, Response response) {
         if (manager != HeaderManager.EMPTY) {
-            manager.saveFromResponse(url, response.headers);
+            manager.saveFromResponse(request.url, response.headers);
         }
-        final DownloadListener listener = builder.downloadListener();
+        final DownloadListener listener = request.downloadListener;
         final ResponseBody responseBody = response.responseBody;
         if (listener != null && responseBody != null) {
             final long contentLength = responseBody.contentLength();
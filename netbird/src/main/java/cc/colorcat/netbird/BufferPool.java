@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird;
+
+/**
+ * A process-wide pool of fixed-size copy buffers, so copying a body doesn't leave fresh arrays behind
+ * on every request. At most {@link #MAX_POOLED} buffers of each kind are kept, a buffer taken while the
+ * pool is empty is simply allocated.
+ * <p>
+ * A buffer must not be used after it has been recycled, and must not be recycled twice.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public final class BufferPool {
+    public static final int BYTE_BUFFER_SIZE = 8192;
+    public static final int CHAR_BUFFER_SIZE = 4096;
+    static final int MAX_POOLED = 32;
+
+    private static final byte[][] BYTES = new byte[MAX_POOLED][];
+    private static int byteCount = 0;
+    private static final char[][] CHARS = new char[MAX_POOLED][];
+    private static int charCount = 0;
+
+    /**
+     * @return a buffer of {@link #BYTE_BUFFER_SIZE} bytes, its content is undefined.
+     */
+    public static byte[] takeBytes() {
+        synchronized (BYTES) {
+            if (byteCount > 0) {
+                final byte[] buffer = BYTES[--byteCount];
+                BYTES[byteCount] = null;
+                return buffer;
+            }
+        }
+        return new byte[BYTE_BUFFER_SIZE];
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #takeBytes()}, buffers of other sizes are ignored.
+     */
+    public static void recycle(byte[] buffer) {
+        if (buffer == null || buffer.length != BYTE_BUFFER_SIZE) return;
+        synchronized (BYTES) {
+            if (byteCount < MAX_POOLED) {
+                BYTES[byteCount++] = buffer;
+            }
+        }
+    }
+
+    /**
+     * @return a buffer of {@link #CHAR_BUFFER_SIZE} chars, its content is undefined.
+     */
+    public static char[] takeChars() {
+        synchronized (CHARS) {
+            if (charCount > 0) {
+                final char[] buffer = CHARS[--charCount];
+                CHARS[charCount] = null;
+                return buffer;
+            }
+        }
+        return new char[CHAR_BUFFER_SIZE];
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #takeChars()}, buffers of other sizes are ignored.
+     */
+    public static void recycle(char[] buffer) {
+        if (buffer == null || buffer.length != CHAR_BUFFER_SIZE) return;
+        synchronized (CHARS) {
+            if (charCount < MAX_POOLED) {
+                CHARS[charCount++] = buffer;
+            }
+        }
+    }
+
+    private BufferPool() {
+        throw new AssertionError("no instance");
+    }
+}
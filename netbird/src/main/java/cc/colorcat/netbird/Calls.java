@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Adapts {@link Call} to {@link CompletableFuture}, it requires Java 8 or Android 7.0 (API level 24)
+ * and is the only class of the library which does, {@link Call} itself stays usable on Java 7.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public final class Calls {
+
+    /**
+     * Enqueues the call like {@link Call#enqueue(Callback)}, but the response is handed over open
+     * and the caller must close its body. Canceling the future cancels the call.
+     * The body of a {@link Call} not created by {@link NetBird} is read into memory before it is handed over.
+     */
+    public static CompletableFuture<Response> submit(final Call call) {
+        if (call == null) throw new NullPointerException("call == null");
+        final CompletableFuture<Response> future = new CompletableFuture<Response>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                final boolean canceled = super.cancel(mayInterruptIfRunning);
+                if (canceled) call.cancel();
+                return canceled;
+            }
+        };
+        if (call instanceof RealCall) {
+            ((RealCall) call).enqueue(new FutureCallback(future, false), false);
+        } else {
+            call.enqueue(new FutureCallback(future, true));
+        }
+        return future;
+    }
+
+    private Calls() {
+        throw new AssertionError("no instance");
+    }
+
+
+    private static final class FutureCallback implements Callback {
+        private final CompletableFuture<Response> future;
+        /**
+         * True if the body is closed once the callback returns and must be read before.
+         */
+        private final boolean buffer;
+
+        private FutureCallback(CompletableFuture<Response> future, boolean buffer) {
+            this.future = future;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void onStart() {
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            final ResponseBody body = response.responseBody();
+            if (buffer && body != null && !future.isDone()) {
+                response = response.newBuilder()
+                        .responseBody(ResponseBody.create(body.bytes(), body.contentType()))
+                        .build();
+            }
+            // nobody will read the response if the future has been canceled
+            if (!future.complete(response) && response.responseBody() != null) {
+                response.responseBody().close();
+            }
+        }
+
+        @Override
+        public void onFailure(Call call, StateIOException cause) {
+            future.completeExceptionally(cause);
+        }
+
+        @Override
+        public void onFinish() {
+        }
+    }
+}
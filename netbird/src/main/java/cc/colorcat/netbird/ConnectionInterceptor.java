@@ -48,7 +48,7 @@ final class ConnectionInterceptor implements Interceptor {
         final int code = conn.responseCode();
         final String msg = Utils.nullElse(conn.responseMsg(), "");
         ResponseBody body = null;
-        if (code == 200) {
+        if (code == 200 || code == 206) {
             body = conn.responseBody(headers);
         }
         return new Response.Builder().responseCode(code).responseMsg(msg).headers(headers).responseBody(body).build();
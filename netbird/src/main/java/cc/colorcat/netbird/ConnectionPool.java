@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the idle keep-alive sockets of {@link NioConnection} per route (scheme, host, port and proxy).
+ * Sockets idle for longer than the keep-alive duration are evicted lazily, when the pool is used.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public final class ConnectionPool {
+    private final int maxIdlePerHost;
+    private final long keepAliveMillis;
+    /**
+     * The most recently used socket is at the head of each queue, the oldest at the tail.
+     */
+    private final Map<String, ArrayDeque<PooledSocket>> idleSockets = new HashMap<>();
+    private int idleCount = 0;
+    private long nextEviction = Long.MAX_VALUE;
+
+    private final AtomicLong hitCount = new AtomicLong(0L);
+    private final AtomicLong missCount = new AtomicLong(0L);
+    private final AtomicLong evictionCount = new AtomicLong(0L);
+
+    public ConnectionPool() {
+        this(5, 5L, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @param maxIdlePerHost    the maximum number of idle sockets kept for each route, 0 disables reusing.
+     * @param keepAliveDuration how long an idle socket is kept before it is evicted.
+     */
+    public ConnectionPool(int maxIdlePerHost, long keepAliveDuration, TimeUnit unit) {
+        if (maxIdlePerHost < 0) {
+            throw new IllegalArgumentException("maxIdlePerHost(" + maxIdlePerHost + ") < 0");
+        }
+        if (keepAliveDuration <= 0L) {
+            throw new IllegalArgumentException("keepAliveDuration(" + keepAliveDuration + ") <= 0");
+        }
+        this.maxIdlePerHost = maxIdlePerHost;
+        this.keepAliveMillis = unit.toMillis(keepAliveDuration);
+    }
+
+    public int maxIdlePerHost() {
+        return maxIdlePerHost;
+    }
+
+    public long keepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public synchronized int idleCount() {
+        return idleCount;
+    }
+
+    /**
+     * @return the number of times an idle socket was reused.
+     */
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of times a new socket had to be opened.
+     */
+    public long missCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of idle sockets closed because they expired, went stale or overflowed.
+     */
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Closes all the idle sockets.
+     */
+    public void evictAll() {
+        final List<PooledSocket> evicted = new ArrayList<>();
+        synchronized (this) {
+            for (ArrayDeque<PooledSocket> sockets : idleSockets.values()) {
+                evicted.addAll(sockets);
+            }
+            idleSockets.clear();
+            idleCount = 0;
+            nextEviction = Long.MAX_VALUE;
+        }
+        close(evicted);
+    }
+
+    /**
+     * @return a healthy idle socket of the route or null if there is none.
+     */
+    PooledSocket get(String route) {
+        evictExpired();
+        for (; ; ) {
+            final PooledSocket socket;
+            synchronized (this) {
+                final ArrayDeque<PooledSocket> sockets = idleSockets.get(route);
+                socket = sockets != null ? sockets.pollFirst() : null;
+                if (socket == null) break;
+                --idleCount;
+                if (sockets.isEmpty()) idleSockets.remove(route);
+            }
+            // checking is a system call, keep it out of the lock
+            if (socket.isHealthy()) {
+                hitCount.incrementAndGet();
+                return socket;
+            }
+            evictionCount.incrementAndGet();
+            socket.close();
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    void put(PooledSocket socket) {
+        if (maxIdlePerHost == 0) {
+            socket.close();
+            return;
+        }
+        socket.idleSince = now();
+        final PooledSocket overflow;
+        synchronized (this) {
+            ArrayDeque<PooledSocket> sockets = idleSockets.get(socket.route);
+            if (sockets == null) {
+                sockets = new ArrayDeque<>(maxIdlePerHost + 1);
+                idleSockets.put(socket.route, sockets);
+            }
+            sockets.offerFirst(socket);
+            ++idleCount;
+            nextEviction = Math.min(nextEviction, socket.idleSince + keepAliveMillis);
+            if (sockets.size() > maxIdlePerHost) {
+                overflow = sockets.pollLast();
+                --idleCount;
+            } else {
+                overflow = null;
+            }
+        }
+        if (overflow != null) {
+            evictionCount.incrementAndGet();
+            overflow.close();
+        }
+    }
+
+    private void evictExpired() {
+        final long now = now();
+        List<PooledSocket> evicted = null;
+        synchronized (this) {
+            if (now < nextEviction) return;
+            final long deadline = now - keepAliveMillis;
+            long next = Long.MAX_VALUE;
+            Iterator<ArrayDeque<PooledSocket>> iterator = idleSockets.values().iterator();
+            while (iterator.hasNext()) {
+                final ArrayDeque<PooledSocket> sockets = iterator.next();
+                for (PooledSocket oldest = sockets.peekLast(); oldest != null; oldest = sockets.peekLast()) {
+                    if (oldest.idleSince > deadline) {
+                        next = Math.min(next, oldest.idleSince + keepAliveMillis);
+                        break;
+                    }
+                    if (evicted == null) evicted = new ArrayList<>();
+                    evicted.add(sockets.pollLast());
+                    --idleCount;
+                }
+                if (sockets.isEmpty()) iterator.remove();
+            }
+            nextEviction = next;
+        }
+        if (evicted != null) close(evicted);
+    }
+
+    private void close(List<PooledSocket> sockets) {
+        for (int i = 0, size = sockets.size(); i < size; ++i) {
+            evictionCount.incrementAndGet();
+            sockets.get(i).close();
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "maxIdlePerHost=" + maxIdlePerHost +
+                ", keepAliveMillis=" + keepAliveMillis +
+                ", idleCount=" + idleCount() +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                '}';
+    }
+}
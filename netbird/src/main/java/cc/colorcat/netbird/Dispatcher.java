@@ -16,12 +16,25 @@
 
 package cc.colorcat.netbird;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Author: cxx
@@ -29,13 +42,81 @@ import java.util.concurrent.ExecutorService;
  * GitHub: https://github.com/ccolorcat
  */
 final class Dispatcher {
+    private static final Priority[] PRIORITIES = Priority.values();
+
     private ExecutorService executor;
-    private int maxRunning = 6;
-    private final Queue<RealCall.AsyncCall> waitingAsyncCalls = new ConcurrentLinkedQueue<>();
-    private final Set<RealCall.AsyncCall> runningAsyncCalls = new CopyOnWriteArraySet<>();
+    private volatile int maxRunning = 6;
+    private volatile int maxWaiting = Integer.MAX_VALUE;
+    private volatile long priorityAging = 5000L;
+    private volatile Backpressure backpressure = Backpressure.FAIL_FAST;
+    private int maxRunningPerHost = Integer.MAX_VALUE;
+    private int maxRunningPerTag = Integer.MAX_VALUE;
+    /**
+     * If true, admission and completion never take the dispatcher's monitor,
+     * running slots are claimed with CAS on {@link #runningCount}.
+     * The per-host and per-tag limits are only supported by the default mode.
+     */
+    final boolean lockFree;
+    private final AtomicInteger runningCount = new AtomicInteger(0);
+    private final AtomicInteger waitingCount = new AtomicInteger(0);
+    private final AtomicInteger[] waitingByPriority = new AtomicInteger[PRIORITIES.length];
+    private final AtomicLong sequence = new AtomicLong(0L);
+    private final AtomicLong rejectedCount = new AtomicLong(0L);
+    private final AtomicLong shedCount = new AtomicLong(0L);
+    private final AtomicLong blockedCount = new AtomicLong(0L);
+    /**
+     * The monitor the enqueuing threads wait on with {@link Backpressure#BLOCK}.
+     */
+    private final Object waitingSlot = new Object();
+    private volatile int blockedThreads = 0;
+    /**
+     * The waiting calls of the lock-free mode, one FIFO lane for each {@link Priority}.
+     */
+    private final Queue<RealCall.AsyncCall>[] waitingLanes;
+    /**
+     * The waiting calls of the default mode grouped by host, a host is moved to the tail
+     * whenever one of its calls is promoted, so promotion goes round-robin across hosts
+     * which have the same effective priority. Guarded by this.
+     */
+    private final LinkedHashMap<String, TreeSet<RealCall.AsyncCall>> waitingByHost = new LinkedHashMap<>();
+    private final Map<String, Integer> runningByHost = new HashMap<>();
+    private final Map<Object, Integer> runningByTag = new HashMap<>();
+    /**
+     * Index of the waiting calls for duplicate detection, a call is waiting only while it is in here.
+     */
+    private final Set<RealCall.AsyncCall> waitingIndex =
+            Collections.newSetFromMap(new ConcurrentHashMap<RealCall.AsyncCall, Boolean>());
+    private final Set<RealCall.AsyncCall> runningAsyncCalls;
     private final Set<RealCall> runningSyncCalls = new CopyOnWriteArraySet<>();
 
+    /**
+     * Orders the calls of one host by {@link RealCall.AsyncCall#rank} and then by arrival.
+     */
+    private static final Comparator<RealCall.AsyncCall> WAITING_ORDER = new Comparator<RealCall.AsyncCall>() {
+        @Override
+        public int compare(RealCall.AsyncCall c1, RealCall.AsyncCall c2) {
+            if (c1.rank != c2.rank) return c1.rank < c2.rank ? -1 : 1;
+            return c1.sequence < c2.sequence ? -1 : (c1.sequence == c2.sequence ? 0 : 1);
+        }
+    };
+
     Dispatcher() {
+        this(false);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Dispatcher(boolean lockFree) {
+        this.lockFree = lockFree;
+        this.waitingLanes = new Queue[PRIORITIES.length];
+        for (int i = 0; i < PRIORITIES.length; ++i) {
+            waitingByPriority[i] = new AtomicInteger(0);
+            waitingLanes[i] = new ConcurrentLinkedQueue<>();
+        }
+        if (lockFree) {
+            this.runningAsyncCalls = Collections.newSetFromMap(new ConcurrentHashMap<RealCall.AsyncCall, Boolean>());
+        } else {
+            this.runningAsyncCalls = new CopyOnWriteArraySet<>();
+        }
     }
 
     synchronized void setExecutor(ExecutorService executor) {
@@ -46,49 +127,416 @@ final class Dispatcher {
         this.maxRunning = maxRunning;
     }
 
+    void setMaxWaiting(int maxWaiting) {
+        this.maxWaiting = maxWaiting;
+    }
+
+    synchronized void setMaxRunningPerHost(int maxRunningPerHost) {
+        this.maxRunningPerHost = maxRunningPerHost;
+    }
+
+    synchronized void setMaxRunningPerTag(int maxRunningPerTag) {
+        this.maxRunningPerTag = maxRunningPerTag;
+    }
+
+    synchronized void setPriorityAging(long priorityAging) {
+        this.priorityAging = priorityAging;
+    }
+
+    void setBackpressure(Backpressure backpressure) {
+        this.backpressure = backpressure;
+    }
+
     boolean executed(RealCall call) {
         return runningSyncCalls.add(call);
     }
 
     void enqueue(RealCall.AsyncCall call) {
-        if (!waitingAsyncCalls.contains(call) && waitingAsyncCalls.offer(call)) {
-            promoteCalls();
+        if (!reserveWaiting(call)) {
+            rejectedCount.incrementAndGet();
+            onTooManyRequests(call);
+        } else if (waitingIndex.add(call)) {
+            call.waitingSince = now();
+            // every waiting call ages at the same rate, so the order by rank never changes while waiting
+            call.rank = call.waitingSince - call.request().priority.ordinal() * priorityAging;
+            call.sequence = sequence.getAndIncrement();
+            waitingByPriority[call.request().priority.ordinal()].incrementAndGet();
+            if (lockFree) {
+                waitingLanes[call.request().priority.ordinal()].offer(call);
+                promoteCallsLockFree();
+            } else {
+                enqueueLocked(call);
+            }
         } else {
+            releaseWaiting();
             onDuplicateRequest(call);
         }
     }
 
-    private synchronized void promoteCalls() {
-        if (runningAsyncCalls.size() >= maxRunning) return;
-        for (RealCall.AsyncCall call = waitingAsyncCalls.poll(); call != null; call = waitingAsyncCalls.poll()) {
+    /**
+     * @return true if a waiting slot has been taken for the call, false if it must be rejected.
+     */
+    private boolean reserveWaiting(RealCall.AsyncCall call) {
+        for (; ; ) {
+            final int waiting = waitingCount.get();
+            if (waiting < maxWaiting) {
+                if (waitingCount.compareAndSet(waiting, waiting + 1)) return true;
+                continue;
+            }
+            switch (backpressure) {
+                case BLOCK:
+                    if (!awaitWaitingSlot()) return false;
+                    break;
+                case SHED_BY_PRIORITY:
+                    if (!shedLowerPriority(call.request().priority)) return false;
+                    break;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private void releaseWaiting() {
+        waitingCount.decrementAndGet();
+        if (blockedThreads > 0) {
+            synchronized (waitingSlot) {
+                waitingSlot.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return false if the thread has been interrupted while waiting.
+     */
+    private boolean awaitWaitingSlot() {
+        blockedCount.incrementAndGet();
+        synchronized (waitingSlot) {
+            ++blockedThreads;
+            try {
+                while (waitingCount.get() >= maxWaiting) {
+                    waitingSlot.wait();
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                --blockedThreads;
+            }
+        }
+    }
+
+    /**
+     * @return true if a waiting call of lower priority has been failed to make room.
+     */
+    private boolean shedLowerPriority(Priority priority) {
+        final RealCall.AsyncCall victim = lockFree ? pollLowerLane(priority) : pollLowerLocked(priority);
+        if (victim == null) return false;
+        shedCount.incrementAndGet();
+        onTooManyRequests(victim);
+        return true;
+    }
+
+    private RealCall.AsyncCall pollLowerLane(Priority priority) {
+        for (int i = 0, size = priority.ordinal(); i < size; ++i) {
+            final Queue<RealCall.AsyncCall> lane = waitingLanes[i];
+            for (RealCall.AsyncCall call = lane.poll(); call != null; call = lane.poll()) {
+                if (unindex(call)) return call;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the waiting call which would be promoted last among those of the lowest priority,
+     * or null if every waiting call has the priority or a higher one.
+     */
+    private synchronized RealCall.AsyncCall pollLowerLocked(Priority priority) {
+        String victimHost = null;
+        RealCall.AsyncCall victim = null;
+        for (Map.Entry<String, TreeSet<RealCall.AsyncCall>> entry : waitingByHost.entrySet()) {
+            final RealCall.AsyncCall last = entry.getValue().last();
+            final int ordinal = last.request().priority.ordinal();
+            if (ordinal >= priority.ordinal()) continue;
+            if (victim == null || ordinal < victim.request().priority.ordinal()
+                    || (ordinal == victim.request().priority.ordinal() && WAITING_ORDER.compare(last, victim) > 0)) {
+                victimHost = entry.getKey();
+                victim = last;
+            }
+        }
+        if (victim != null) {
+            final TreeSet<RealCall.AsyncCall> calls = waitingByHost.get(victimHost);
+            calls.remove(victim);
+            if (calls.isEmpty()) {
+                waitingByHost.remove(victimHost);
+            }
+            unindex(victim);
+        }
+        return victim;
+    }
+
+    private void enqueueLocked(RealCall.AsyncCall call) {
+        final List<RealCall.AsyncCall> rejected = new ArrayList<>(0);
+        final List<RealCall.AsyncCall> duplicates = new ArrayList<>(0);
+        synchronized (this) {
+            TreeSet<RealCall.AsyncCall> calls = waitingByHost.get(call.host());
+            if (calls == null) {
+                calls = new TreeSet<>(WAITING_ORDER);
+                waitingByHost.put(call.host(), calls);
+            }
+            calls.add(call);
+            promoteCallsLocked(rejected, duplicates);
+        }
+        notifyFailed(rejected, duplicates);
+    }
+
+    /**
+     * The calls the executor rejects and those already running are added to {@code rejected} and
+     * {@code duplicates}, the caller fails them once it has released the monitor, a callback may
+     * enqueue again or block with {@link Backpressure#BLOCK}.
+     */
+    private synchronized void promoteCallsLocked(List<RealCall.AsyncCall> rejected, List<RealCall.AsyncCall> duplicates) {
+        while (runningAsyncCalls.size() < maxRunning) {
+            final RealCall.AsyncCall call = pollEligible();
+            if (call == null) return;
             if (runningAsyncCalls.add(call)) {
-                executor.execute(call);
-                if (runningAsyncCalls.size() >= maxRunning) return;
+                increase(runningByHost, call.host(), 1);
+                increase(runningByTag, call.request().tag(), 1);
+                if (!execute(call)) {
+                    runningAsyncCalls.remove(call);
+                    increase(runningByHost, call.host(), -1);
+                    increase(runningByTag, call.request().tag(), -1);
+                    rejected.add(call);
+                }
+            } else {
+                duplicates.add(call);
+            }
+        }
+    }
+
+    private static void notifyFailed(List<RealCall.AsyncCall> rejected, List<RealCall.AsyncCall> duplicates) {
+        for (int i = 0, size = rejected.size(); i < size; ++i) {
+            onTooManyRequests(rejected.get(i));
+        }
+        for (int i = 0, size = duplicates.size(); i < size; ++i) {
+            onDuplicateRequest(duplicates.get(i));
+        }
+    }
+
+    /**
+     * Takes the first call of every host which is under both its host limit and its tag limit,
+     * and returns the one with the highest effective priority, the earliest host in round-robin
+     * order wins a tie.
+     *
+     * @return the call to run next or null if there is no eligible call.
+     */
+    private RealCall.AsyncCall pollEligible() {
+        final long now = now();
+        String bestHost = null;
+        RealCall.AsyncCall bestCall = null;
+        long bestLevel = Long.MIN_VALUE;
+        for (Map.Entry<String, TreeSet<RealCall.AsyncCall>> entry : waitingByHost.entrySet()) {
+            final String host = entry.getKey();
+            if (count(runningByHost, host) >= maxRunningPerHost) continue;
+            for (RealCall.AsyncCall call : entry.getValue()) {
+                if (count(runningByTag, call.request().tag()) >= maxRunningPerTag) continue;
+                final long level = effectiveLevel(call, now);
+                if (level > bestLevel) {
+                    bestHost = host;
+                    bestCall = call;
+                    bestLevel = level;
+                }
+                break;
+            }
+        }
+        if (bestCall != null) {
+            final TreeSet<RealCall.AsyncCall> calls = waitingByHost.remove(bestHost);
+            calls.remove(bestCall);
+            if (!calls.isEmpty()) {
+                waitingByHost.put(bestHost, calls);
+            }
+            unindex(bestCall);
+        }
+        return bestCall;
+    }
+
+    /**
+     * Claims a running slot first and only then takes a waiting call, so a call offered
+     * while all slots were taken is always picked up by whichever thread frees the next slot.
+     */
+    private void promoteCallsLockFree() {
+        for (; ; ) {
+            final int running = runningCount.get();
+            if (running >= maxRunning) return;
+            if (!runningCount.compareAndSet(running, running + 1)) continue;
+            final RealCall.AsyncCall call = pollWaiting();
+            if (call == null) {
+                runningCount.decrementAndGet();
+                // another thread may have offered a call after the poll and seen no free slot
+                if (isLanesEmpty()) return;
+            } else if (runningAsyncCalls.add(call)) {
+                if (!execute(call)) {
+                    runningAsyncCalls.remove(call);
+                    runningCount.decrementAndGet();
+                    onTooManyRequests(call);
+                }
             } else {
+                runningCount.decrementAndGet();
                 onDuplicateRequest(call);
             }
         }
     }
 
+    /**
+     * Polls the lane whose head has the highest effective priority.
+     */
+    private RealCall.AsyncCall pollWaiting() {
+        for (; ; ) {
+            final long now = now();
+            Queue<RealCall.AsyncCall> bestLane = null;
+            long bestLevel = Long.MIN_VALUE;
+            for (int i = waitingLanes.length - 1; i >= 0; --i) {
+                final RealCall.AsyncCall head = waitingLanes[i].peek();
+                if (head != null) {
+                    final long level = effectiveLevel(head, now);
+                    if (level > bestLevel) {
+                        bestLane = waitingLanes[i];
+                        bestLevel = level;
+                    }
+                }
+            }
+            if (bestLane == null) return null;
+            final RealCall.AsyncCall call = bestLane.poll();
+            // skip the calls which have been canceled by cancelWaiting(Object)
+            if (call != null && unindex(call)) {
+                return call;
+            }
+        }
+    }
+
+    /**
+     * @return false if the executor rejected the call, the caller has to fail it then.
+     */
+    private boolean execute(RealCall.AsyncCall call) {
+        try {
+            executor.execute(call);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    private boolean isLanesEmpty() {
+        for (Queue<RealCall.AsyncCall> lane : waitingLanes) {
+            if (!lane.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    private long effectiveLevel(RealCall.AsyncCall call, long now) {
+        return call.request().priority.ordinal() + (now - call.waitingSince) / priorityAging;
+    }
+
+    private boolean unindex(RealCall.AsyncCall call) {
+        if (waitingIndex.remove(call)) {
+            releaseWaiting();
+            waitingByPriority[call.request().priority.ordinal()].decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
     private static void onDuplicateRequest(RealCall.AsyncCall call) {
         Callback callback = call.callback();
         callback.onFailure(call.get(), HttpStatus.duplicateRequest());
         callback.onFinish();
     }
 
+    private static void onTooManyRequests(RealCall.AsyncCall call) {
+        Callback callback = call.callback();
+        callback.onFailure(call.get(), HttpStatus.tooManyRequests());
+        callback.onFinish();
+    }
+
     void finished(RealCall call) {
         runningSyncCalls.remove(call);
     }
 
     void finished(RealCall.AsyncCall call) {
-        runningAsyncCalls.remove(call);
-        promoteCalls();
+        if (lockFree) {
+            if (runningAsyncCalls.remove(call)) {
+                runningCount.decrementAndGet();
+            }
+            promoteCallsLockFree();
+        } else {
+            finishedLocked(call);
+        }
+    }
+
+    private void finishedLocked(RealCall.AsyncCall call) {
+        final List<RealCall.AsyncCall> rejected = new ArrayList<>(0);
+        final List<RealCall.AsyncCall> duplicates = new ArrayList<>(0);
+        synchronized (this) {
+            if (runningAsyncCalls.remove(call)) {
+                increase(runningByHost, call.host(), -1);
+                increase(runningByTag, call.request().tag(), -1);
+            }
+            promoteCallsLocked(rejected, duplicates);
+        }
+        notifyFailed(rejected, duplicates);
+    }
+
+    int runningAsyncCount() {
+        return runningAsyncCalls.size();
+    }
+
+    int waitingAsyncCount() {
+        return waitingCount.get();
+    }
+
+    int waitingAsyncCount(Priority priority) {
+        return waitingByPriority[priority.ordinal()].get();
+    }
+
+    long rejectedCount() {
+        return rejectedCount.get();
+    }
+
+    long shedCount() {
+        return shedCount.get();
+    }
+
+    long blockedCount() {
+        return blockedCount.get();
     }
 
     void cancelWaiting(Object tag) {
-        Iterator<RealCall.AsyncCall> iterator = waitingAsyncCalls.iterator();
+        if (lockFree) {
+            for (Queue<RealCall.AsyncCall> lane : waitingLanes) {
+                removeWaiting(lane, tag);
+            }
+        } else {
+            synchronized (this) {
+                Iterator<TreeSet<RealCall.AsyncCall>> iterator = waitingByHost.values().iterator();
+                while (iterator.hasNext()) {
+                    TreeSet<RealCall.AsyncCall> calls = iterator.next();
+                    removeWaiting(calls, tag);
+                    if (calls.isEmpty()) iterator.remove();
+                }
+            }
+        }
+    }
+
+    private void removeWaiting(Iterable<RealCall.AsyncCall> calls, Object tag) {
+        Iterator<RealCall.AsyncCall> iterator = calls.iterator();
         while (iterator.hasNext()) {
-            if (iterator.next().request().tag().equals(tag)) {
+            RealCall.AsyncCall call = iterator.next();
+            if (call.request().tag().equals(tag) && unindex(call)) {
                 iterator.remove();
             }
         }
@@ -110,7 +558,19 @@ final class Dispatcher {
 
 
     void cancelAll() {
-        waitingAsyncCalls.clear();
+        if (lockFree) {
+            //noinspection StatementWithEmptyBody
+            while (pollWaiting() != null) ;
+        } else {
+            synchronized (this) {
+                for (TreeSet<RealCall.AsyncCall> calls : waitingByHost.values()) {
+                    for (RealCall.AsyncCall call : calls) {
+                        unindex(call);
+                    }
+                }
+                waitingByHost.clear();
+            }
+        }
         for (RealCall.AsyncCall call : runningAsyncCalls) {
             call.get().cancel();
         }
@@ -118,4 +578,18 @@ final class Dispatcher {
             call.cancel();
         }
     }
+
+    private static <K> int count(Map<K, Integer> counts, K key) {
+        Integer count = counts.get(key);
+        return count != null ? count : 0;
+    }
+
+    private static <K> void increase(Map<K, Integer> counts, K key, int delta) {
+        int count = count(counts, key) + delta;
+        if (count > 0) {
+            counts.put(key, count);
+        } else {
+            counts.remove(key);
+        }
+    }
 }
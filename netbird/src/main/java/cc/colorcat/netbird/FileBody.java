@@ -59,7 +59,7 @@ public final class FileBody extends RequestBody {
 
     @Override
     public void writeTo(OutputStream output) throws IOException {
-        InputStream input = Utils.buffered(ProgressInputStream.of(file, listener));
+        InputStream input = ProgressInputStream.of(file, listener);
         try {
             Utils.justDump(input, output);
         } finally {
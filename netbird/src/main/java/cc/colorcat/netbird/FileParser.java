@@ -17,9 +17,13 @@
 package cc.colorcat.netbird;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * Author: cxx
@@ -27,12 +31,13 @@ import java.io.OutputStream;
  * GitHub: https://github.com/ccolorcat
  */
 public final class FileParser implements Parser<File> {
+    /**
+     * How many bytes one {@link FileChannel#transferFrom(ReadableByteChannel, long, long)} call may move.
+     */
+    private static final long TRANSFER_SIZE = 1024L * 1024L;
+
     public static FileParser create(File savePath) {
-        final File parent = savePath.getParentFile();
-        if (parent.exists() || parent.mkdirs()) {
-            return new FileParser(savePath);
-        }
-        throw new RuntimeException("Can't create directory, " + savePath.getAbsolutePath());
+        return new Builder(savePath).build();
     }
 
     public static FileParser create(String savePath) {
@@ -40,20 +45,118 @@ public final class FileParser implements Parser<File> {
     }
 
     private final File savePath;
+    private final boolean transferChannel;
+    private final boolean sync;
+    private final boolean atomicRename;
 
-    private FileParser(File savePath) {
-        this.savePath = savePath;
+    private FileParser(Builder builder) {
+        this.savePath = builder.savePath;
+        this.transferChannel = builder.transferChannel;
+        this.sync = builder.sync;
+        this.atomicRename = builder.atomicRename;
     }
 
     @Override
     public NetworkData<? extends File> parse(Response response) throws IOException {
-        OutputStream output = null;
+        final File target = atomicRename ? new File(savePath.getPath() + ".download") : savePath;
+        boolean success = false;
+        FileOutputStream fos = null;
         try {
-            output = Utils.buffered(new FileOutputStream(savePath));
-            Utils.justDump(response.responseBody.stream(), output);
+            fos = new FileOutputStream(target);
+            if (transferChannel) {
+                transfer(response.responseBody.stream(), fos.getChannel());
+            } else {
+                Utils.justDump(response.responseBody.stream(), fos);
+            }
+            if (sync) {
+                fos.getFD().sync();
+            }
+            fos.close();
+            fos = null;
+            if (atomicRename) {
+                Utils.rename(target, savePath);
+            }
+            success = true;
             return NetworkData.newSuccess(savePath);
         } finally {
-            Utils.close(output);
+            Utils.close(fos);
+            if (!success && atomicRename) {
+                target.delete();
+            }
+        }
+    }
+
+    /**
+     * Copies {@code input} to {@code output} without the {@link java.io.BufferedInputStream}/{@link java.io.BufferedOutputStream}
+     * layers. A body read straight from a file, such as a cached one, is copied by the kernel.
+     */
+    private static void transfer(InputStream input, FileChannel output) throws IOException {
+        final ReadableByteChannel source;
+        if (input instanceof FileInputStream) {
+            source = ((FileInputStream) input).getChannel();
+        } else {
+            source = Channels.newChannel(input);
+        }
+        try {
+            long position = 0L;
+            for (long count = output.transferFrom(source, position, TRANSFER_SIZE);
+                 count > 0L;
+                 count = output.transferFrom(source, position, TRANSFER_SIZE)) {
+                position += count;
+            }
+        } finally {
+            Utils.close(source);
+        }
+    }
+
+
+    public static final class Builder {
+        private final File savePath;
+        private boolean transferChannel = true;
+        private boolean sync = false;
+        private boolean atomicRename = false;
+
+        public Builder(File savePath) {
+            if (savePath == null) throw new IllegalArgumentException("savePath == null");
+            this.savePath = savePath;
+        }
+
+        public Builder(String savePath) {
+            this(new File(savePath));
+        }
+
+        /**
+         * @param enabled true (the default) to write the body through {@link FileChannel#transferFrom(ReadableByteChannel, long, long)},
+         *                false to copy it through a pooled buffer.
+         */
+        public Builder transferChannel(boolean enabled) {
+            this.transferChannel = enabled;
+            return this;
+        }
+
+        /**
+         * @param enabled true to flush the file to the storage device before the download is reported successful.
+         */
+        public Builder sync(boolean enabled) {
+            this.sync = enabled;
+            return this;
+        }
+
+        /**
+         * @param enabled true to download into a sibling file first and rename it to the save path once complete,
+         *                so the save path never holds a partial file.
+         */
+        public Builder atomicRename(boolean enabled) {
+            this.atomicRename = enabled;
+            return this;
+        }
+
+        public FileParser build() {
+            final File parent = savePath.getAbsoluteFile().getParentFile();
+            if (parent.exists() || parent.mkdirs()) {
+                return new FileParser(this);
+            }
+            throw new RuntimeException("Can't create directory, " + savePath.getAbsolutePath());
         }
     }
 }
@@ -34,16 +34,23 @@ final class GzipInterceptor implements Interceptor {
 
     @Override
     public Response intercept(Chain chain) throws IOException {
-        if (!gzipEnabled) return chain.proceed(chain.request());
-        boolean transparentGzip = false;
-        final Request.Builder builder = chain.request().unfreeze().newBuilder();
-        if (builder.headerValue("Accept-Encoding") == null && builder.headerValue("Range") == null) {
-            transparentGzip = true;
-            builder.addHeader("Accept-Encoding", "gzip");
-        }
+        final Request request = chain.request();
+        return finish(request, chain.proceed(prepare(request)));
+    }
+
+    /**
+     * @return the request asking for a gzip response if the decompression can be transparent.
+     */
+    Request prepare(Request request) {
+        if (!transparentGzip(request)) return request;
+        return request.unfreeze().newBuilder().addHeader("Accept-Encoding", "gzip").build().freeze();
+    }
 
-        Response response = chain.proceed(builder.build().freeze());
-        if (transparentGzip && "gzip".equalsIgnoreCase(response.header("Content-Encoding"))) {
+    /**
+     * @param request the request passed to {@link #prepare(Request)}.
+     */
+    Response finish(Request request, Response response) throws IOException {
+        if (transparentGzip(request) && "gzip".equalsIgnoreCase(response.header("Content-Encoding"))) {
             final ResponseBody body = response.responseBody;
             if (body != null) {
                 final InputStream newStream = new GZIPInputStream(body.stream());
@@ -56,4 +63,9 @@ final class GzipInterceptor implements Interceptor {
         }
         return response;
     }
+
+    private boolean transparentGzip(Request request) {
+        final Headers headers = request.headers;
+        return gzipEnabled && headers.value("Accept-Encoding") == null && headers.value("Range") == null;
+    }
 }
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * A {@link Connection} on {@code java.net.http.HttpClient} (Java 11+) which negotiates HTTP/2,
+ * so concurrent calls to the same host share one multiplexed connection. The clones of a connection
+ * share its client. The client is reached by reflection, check {@link #isSupported()} first.
+ * <p>
+ * The client doesn't take an {@link javax.net.ssl.SSLSocketFactory} or a {@link javax.net.ssl.HostnameVerifier},
+ * pass an {@link SSLContext} to {@link #Http2Connection(SSLContext)} instead. SOCKS proxies aren't supported.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public final class Http2Connection implements Connection {
+    /**
+     * The headers the client sets by itself or refuses, HTTP/2 has no connection specific headers.
+     */
+    private static final String[] SKIPPED_HEADERS = {
+            "Host", "Connection", "Keep-Alive", "Proxy-Connection", "Content-Length", "Transfer-Encoding", "Expect", "Upgrade"
+    };
+
+    /**
+     * @return true if the runtime has {@code java.net.http.HttpClient}.
+     */
+    public static boolean isSupported() {
+        return Api.INSTANCE != null;
+    }
+
+    private final Client client;
+    private volatile boolean canceled = false;
+    private volatile Future<?> future;
+    private NetBird netBird;
+    private URI uri;
+    private String method;
+    private final List<String> names = new ArrayList<>(8);
+    private final List<String> values = new ArrayList<>(8);
+    private byte[] body;
+
+    private int code = -1;
+    private Headers headers;
+    private InputStream input;
+
+    public Http2Connection() {
+        this((SSLContext) null);
+    }
+
+    /**
+     * @param sslContext the context of the https connections, null for the default one.
+     */
+    public Http2Connection(SSLContext sslContext) {
+        this(new Client(sslContext));
+    }
+
+    private Http2Connection(Client client) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("java.net.http.HttpClient is not available");
+        }
+        this.client = client;
+    }
+
+    @Override
+    public void connect(NetBird netBird, Request request) throws IOException {
+        if (netBird.sslSocketFactory != null || netBird.hostnameVerifier != null) {
+            throw new ProtocolException("Http2Connection doesn't support sslSocketFactory or hostnameVerifier, use an SSLContext");
+        }
+        this.netBird = netBird;
+        this.uri = URI.create(request.url);
+        this.method = request.method.name();
+    }
+
+    @Override
+    public void writeHeaders(Headers headers) {
+        for (int i = 0, size = headers.size(); i < size; ++i) {
+            final String name = headers.name(i);
+            if (!skipped(name)) {
+                names.add(name);
+                values.add(headers.value(i));
+            }
+        }
+    }
+
+    @Override
+    public void writeRequestBody(RequestBody requestBody) throws IOException {
+        final long contentLength = requestBody.contentLength();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(contentLength > 0L ? (int) contentLength : 256);
+        requestBody.writeTo(output);
+        body = output.toByteArray();
+    }
+
+    @Override
+    public int responseCode() throws IOException {
+        send();
+        return code;
+    }
+
+    /**
+     * @return always an empty string, HTTP/2 has no reason phrase.
+     */
+    @Override
+    public String responseMsg() throws IOException {
+        send();
+        return "";
+    }
+
+    @Override
+    public Headers responseHeaders() throws IOException {
+        send();
+        return headers;
+    }
+
+    @Override
+    public ResponseBody responseBody(Headers headers) throws IOException {
+        send();
+        return ResponseBody.create(input, headers);
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        final Future<?> future = this.future;
+        if (future != null) {
+            future.cancel(true);
+        }
+        Utils.close(input);
+    }
+
+    @SuppressWarnings("CloneDoesntCallSuperClone")
+    @Override
+    public Connection clone() {
+        return new Http2Connection(client);
+    }
+
+    @Override
+    public void close() throws IOException {
+        Utils.close(input);
+    }
+
+    private void send() throws IOException {
+        if (code != -1) return;
+        final Api api = Api.INSTANCE;
+        final Object request = api.newRequest(uri, method, names, values, body, netBird.readTimeOut);
+        final Future<?> future = api.sendAsync(client.get(netBird), request);
+        this.future = future;
+        if (canceled) future.cancel(true);
+        final Object response;
+        try {
+            response = future.get();
+        } catch (CancellationException e) {
+            throw HttpStatus.requestCanceled();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the response");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+        final Map<String, List<String>> map = api.headers(response);
+        final Map<String, List<String>> fields = new LinkedHashMap<>(map.size());
+        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+            // drop the pseudo headers like ":status"
+            if (!entry.getKey().startsWith(":")) {
+                fields.put(entry.getKey(), entry.getValue());
+            }
+        }
+        this.headers = Headers.ofWithIgnoreNull(fields);
+        this.input = api.body(response);
+        this.code = api.statusCode(response);
+    }
+
+    private static boolean skipped(String name) {
+        for (String header : SKIPPED_HEADERS) {
+            if (header.equalsIgnoreCase(name)) return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Builds the client lazily and again whenever the proxy or the connect timeout of the {@link NetBird} changes.
+     */
+    private static final class Client {
+        private final SSLContext sslContext;
+        private Object client;
+        private Proxy proxy;
+        private int connectTimeOut;
+
+        private Client(SSLContext sslContext) {
+            this.sslContext = sslContext;
+        }
+
+        private synchronized Object get(NetBird netBird) throws IOException {
+            final Proxy proxy = netBird.proxy;
+            final boolean sameProxy = this.proxy != null ? this.proxy.equals(proxy) : proxy == null;
+            if (client == null || !sameProxy || connectTimeOut != netBird.connectTimeOut) {
+                client = Api.INSTANCE.newClient(proxy, netBird.connectTimeOut, sslContext);
+                this.proxy = proxy;
+                this.connectTimeOut = netBird.connectTimeOut;
+            }
+            return client;
+        }
+    }
+
+
+    /**
+     * The reflective view of {@code java.net.http}, the sources stay on Java 7.
+     */
+    private static final class Api {
+        private static final Api INSTANCE = load();
+
+        private final java.lang.reflect.Method newClientBuilder;
+        private final java.lang.reflect.Method clientVersion;
+        private final java.lang.reflect.Method clientConnectTimeout;
+        private final java.lang.reflect.Method clientFollowRedirects;
+        private final java.lang.reflect.Method clientProxy;
+        private final java.lang.reflect.Method clientSslContext;
+        private final java.lang.reflect.Method buildClient;
+        private final java.lang.reflect.Method newRequestBuilder;
+        private final java.lang.reflect.Method requestMethod;
+        private final java.lang.reflect.Method requestHeader;
+        private final java.lang.reflect.Method requestTimeout;
+        private final java.lang.reflect.Method buildRequest;
+        private final java.lang.reflect.Method ofByteArray;
+        private final java.lang.reflect.Method noBody;
+        private final java.lang.reflect.Method proxySelectorOf;
+        private final java.lang.reflect.Method durationOfMillis;
+        private final java.lang.reflect.Method sendAsync;
+        private final java.lang.reflect.Method statusCode;
+        private final java.lang.reflect.Method responseHeaders;
+        private final java.lang.reflect.Method headersMap;
+        private final java.lang.reflect.Method responseBody;
+        private final Object http2;
+        private final Object redirectNormal;
+        private final Object noProxy;
+        private final Object ofInputStream;
+
+        private static Api load() {
+            try {
+                return new Api();
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Api() throws Exception {
+            final Class<?> client = Class.forName("java.net.http.HttpClient");
+            final Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+            final Class<?> version = Class.forName("java.net.http.HttpClient$Version");
+            final Class<?> redirect = Class.forName("java.net.http.HttpClient$Redirect");
+            final Class<?> request = Class.forName("java.net.http.HttpRequest");
+            final Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+            final Class<?> bodyPublisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+            final Class<?> bodyPublishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+            final Class<?> bodyHandler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+            final Class<?> bodyHandlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+            final Class<?> response = Class.forName("java.net.http.HttpResponse");
+            final Class<?> httpHeaders = Class.forName("java.net.http.HttpHeaders");
+            final Class<?> duration = Class.forName("java.time.Duration");
+
+            newClientBuilder = client.getMethod("newBuilder");
+            clientVersion = clientBuilder.getMethod("version", version);
+            clientConnectTimeout = clientBuilder.getMethod("connectTimeout", duration);
+            clientFollowRedirects = clientBuilder.getMethod("followRedirects", redirect);
+            clientProxy = clientBuilder.getMethod("proxy", ProxySelector.class);
+            clientSslContext = clientBuilder.getMethod("sslContext", SSLContext.class);
+            buildClient = clientBuilder.getMethod("build");
+            newRequestBuilder = request.getMethod("newBuilder", URI.class);
+            requestMethod = requestBuilder.getMethod("method", String.class, bodyPublisher);
+            requestHeader = requestBuilder.getMethod("header", String.class, String.class);
+            requestTimeout = requestBuilder.getMethod("timeout", duration);
+            buildRequest = requestBuilder.getMethod("build");
+            ofByteArray = bodyPublishers.getMethod("ofByteArray", byte[].class);
+            noBody = bodyPublishers.getMethod("noBody");
+            proxySelectorOf = ProxySelector.class.getMethod("of", InetSocketAddress.class);
+            durationOfMillis = duration.getMethod("ofMillis", long.class);
+            sendAsync = client.getMethod("sendAsync", request, bodyHandler);
+            statusCode = response.getMethod("statusCode");
+            responseHeaders = response.getMethod("headers");
+            headersMap = httpHeaders.getMethod("map");
+            responseBody = response.getMethod("body");
+            http2 = Enum.valueOf((Class) version, "HTTP_2");
+            redirectNormal = Enum.valueOf((Class) redirect, "NORMAL");
+            noProxy = clientBuilder.getField("NO_PROXY").get(null);
+            ofInputStream = bodyHandlers.getMethod("ofInputStream").invoke(null);
+        }
+
+        private Object newClient(Proxy proxy, int connectTimeOut, SSLContext sslContext) throws IOException {
+            final Object builder = invoke(newClientBuilder, null);
+            invoke(clientVersion, builder, http2);
+            // follow the redirects like HttpURLConnection does
+            invoke(clientFollowRedirects, builder, redirectNormal);
+            invoke(clientConnectTimeout, builder, invoke(durationOfMillis, null, (long) connectTimeOut));
+            if (proxy != null) {
+                switch (proxy.type()) {
+                    case DIRECT:
+                        invoke(clientProxy, builder, noProxy);
+                        break;
+                    case HTTP:
+                        invoke(clientProxy, builder, invoke(proxySelectorOf, null, proxy.address()));
+                        break;
+                    default:
+                        throw new ProtocolException("unsupported proxy: " + proxy);
+                }
+            }
+            if (sslContext != null) {
+                invoke(clientSslContext, builder, sslContext);
+            }
+            return invoke(buildClient, builder);
+        }
+
+        private Object newRequest(URI uri, String method, List<String> names, List<String> values,
+                                  byte[] body, int readTimeOut) throws IOException {
+            final Object builder = invoke(newRequestBuilder, null, uri);
+            for (int i = 0, size = names.size(); i < size; ++i) {
+                invoke(requestHeader, builder, names.get(i), values.get(i));
+            }
+            invoke(requestTimeout, builder, invoke(durationOfMillis, null, (long) readTimeOut));
+            final Object publisher = body != null ? invoke(ofByteArray, null, (Object) body) : invoke(noBody, null);
+            invoke(requestMethod, builder, method, publisher);
+            return invoke(buildRequest, builder);
+        }
+
+        private Future<?> sendAsync(Object client, Object request) throws IOException {
+            return (Future<?>) invoke(sendAsync, client, request, ofInputStream);
+        }
+
+        private int statusCode(Object response) throws IOException {
+            return (Integer) invoke(statusCode, response);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, List<String>> headers(Object response) throws IOException {
+            return (Map<String, List<String>>) invoke(headersMap, invoke(responseHeaders, response));
+        }
+
+        private InputStream body(Object response) throws IOException {
+            return (InputStream) invoke(responseBody, response);
+        }
+
+        private static Object invoke(java.lang.reflect.Method method, Object target, Object... args) throws IOException {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException(cause);
+            } catch (IllegalAccessException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
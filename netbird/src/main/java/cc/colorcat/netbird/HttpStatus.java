@@ -31,8 +31,12 @@ public final class HttpStatus {
     public static final int CODE_REQUEST_CANCELED = -102;
     public static final String MSG_REQUEST_CANCELED = "request canceled";
 
+    public static final int CODE_TOO_MANY_REQUESTS = -103;
+    public static final String MSG_TOO_MANY_REQUESTS = "too many requests";
+
     private static volatile StateIOException duplicateRequest;
     private static volatile StateIOException requestCanceled;
+    private static volatile StateIOException tooManyRequests;
 
     static StateIOException duplicateRequest() {
         if (duplicateRequest == null) {
@@ -56,6 +60,17 @@ public final class HttpStatus {
         return requestCanceled;
     }
 
+    static StateIOException tooManyRequests() {
+        if (tooManyRequests == null) {
+            synchronized (HttpStatus.class) {
+                if (tooManyRequests == null) {
+                    tooManyRequests = new StateIOException(CODE_TOO_MANY_REQUESTS, MSG_TOO_MANY_REQUESTS);
+                }
+            }
+        }
+        return tooManyRequests;
+    }
+
     private HttpStatus() {
         throw new AssertionError("no instance");
     }
@@ -19,6 +19,8 @@ package cc.colorcat.netbird;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Author: cxx
@@ -26,18 +28,39 @@ import java.nio.charset.Charset;
  * GitHub: https://github.com/ccolorcat
  */
 public abstract class JsonParser<T> implements Parser<T> {
+    /**
+     * The type arguments of each parser class, resolved once and shared by all its instances.
+     */
+    private static final ConcurrentMap<Class<?>, Type[]> TYPES = new ConcurrentHashMap<>();
 
+    /**
+     * @return the first type argument, the same instance for every call on the same parser class,
+     * so it can be used as a key to cache whatever the json library derives from it.
+     */
     protected final Type generateType() {
-        return this.generateTypes()[0];
+        return typeArguments(getClass())[0];
     }
 
     protected final Type[] generateTypes() {
-        Type superClass = getClass().getGenericSuperclass();
-        if (superClass instanceof Class) {
-            throw new RuntimeException("Missing type parameter.");
+        return typeArguments(getClass()).clone();
+    }
+
+    /**
+     * @return the cached type arguments of the generic superclass of {@code clazz}, do not modify.
+     */
+    static Type[] typeArguments(Class<?> clazz) {
+        Type[] types = TYPES.get(clazz);
+        if (types == null) {
+            Type superClass = clazz.getGenericSuperclass();
+            if (superClass instanceof Class) {
+                throw new RuntimeException("Missing type parameter.");
+            }
+            ParameterizedType parameterizedType = (ParameterizedType) superClass;
+            types = parameterizedType.getActualTypeArguments();
+            Type[] previous = TYPES.putIfAbsent(clazz, types);
+            if (previous != null) types = previous;
         }
-        ParameterizedType parameterizedType = (ParameterizedType) superClass;
-        return parameterizedType.getActualTypeArguments();
+        return types;
     }
 
     protected Charset charsetIfAbsent() {
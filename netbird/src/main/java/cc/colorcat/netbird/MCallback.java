@@ -52,13 +52,26 @@ final class MCallback<T> implements Callback {
     @Override
     public void onResponse(Call call, Response response) throws IOException {
         if (response.code == 200 && response.responseBody != null) {
-            networkData = parser.parse(response);
+            networkData = parse(parser, response, listener);
         }
         if (networkData == null) {
             networkData = NetworkData.newFailure(response.code, response.msg);
         }
     }
 
+    /**
+     * Parses like {@link Parser#parse(Response)}, except that a {@link StreamingParser} also hands its
+     * elements to {@code listener} if it is a {@link MRequest.ElementListener}.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> NetworkData<? extends T> parse(Parser<? extends T> parser, Response response, MRequest.Listener<? super T> listener) throws IOException {
+        if (parser instanceof StreamingParser && listener instanceof MRequest.ElementListener) {
+            StreamingParser<Object> streamingParser = (StreamingParser<Object>) parser;
+            return (NetworkData<? extends T>) streamingParser.parse(response, (MRequest.ElementListener<Object>) listener);
+        }
+        return parser.parse(response);
+    }
+
     @Override
     public void onFailure(Call call, StateIOException cause) {
         networkData = NetworkData.newFailure(cause.state, Utils.nullElse(cause.getMessage(), ""));
@@ -65,6 +65,7 @@ public final class MRequest<T> extends Request {
         if (downloadListener != null ? !downloadListener.equals(request.downloadListener) : request.downloadListener != null)
             return false;
         if (!tag.equals(request.tag)) return false;
+        if (priority != request.priority) return false;
         if (!parser.equals(request.parser)) return false;
         return listener != null ? listener.equals(request.listener) : request.listener == null;
     }
@@ -80,6 +81,7 @@ public final class MRequest<T> extends Request {
         result = 31 * result + (downloadListener != null ? downloadListener.hashCode() : 0);
         result = 31 * result + boundary.hashCode();
         result = 31 * result + tag.hashCode();
+        result = 31 * result + priority.hashCode();
         result = 31 * result + parser.hashCode();
         result = 31 * result + (listener != null ? listener.hashCode() : 0);
         return result;
@@ -99,6 +101,7 @@ public final class MRequest<T> extends Request {
                 ", downloadListener=" + downloadListener +
                 ", boundary='" + boundary + '\'' +
                 ", tag=" + tag +
+                ", priority=" + priority +
                 ", freeze=" + freeze +
                 '}';
     }
@@ -115,6 +118,15 @@ public final class MRequest<T> extends Request {
         void onFinish();
     }
 
+    /**
+     * Receives the elements read by a {@link StreamingParser} one by one,
+     * {@link #onSuccess(Object)} then gets the number of elements.
+     */
+    public interface ElementListener<E> extends Listener<Integer> {
+
+        void onElement(E element);
+    }
+
     public static abstract class SimpleListener<R> implements Listener<R> {
         @Override
         public void onStart() {
@@ -133,6 +145,12 @@ public final class MRequest<T> extends Request {
         }
     }
 
+    public static abstract class SimpleElementListener<E> extends SimpleListener<Integer> implements ElementListener<E> {
+        @Override
+        public void onElement(E element) {
+        }
+    }
+
 
     public static final class Builder<T> extends Request.Builder {
         private Parser<? extends T> parser;
@@ -370,6 +388,12 @@ public final class MRequest<T> extends Request {
             return this;
         }
 
+        @Override
+        public Builder<T> priority(Priority priority) {
+            super.priority(priority);
+            return this;
+        }
+
         @Override
         public MRequest<T> build() {
             return new MRequest<>(this);
@@ -36,6 +36,16 @@ public final class NetBird implements Call.Factory {
     final String baseUrl;
     final List<Interceptor> headInterceptors;
     final List<Interceptor> tailInterceptors;
+    /**
+     * The whole interceptor chain shared by every call, all the interceptors are stateless.
+     */
+    final Interceptor[] interceptors;
+    final BridgeInterceptor bridgeInterceptor;
+    final GzipInterceptor gzipInterceptor;
+    /**
+     * Null unless the selector engine is enabled and there are no head or tail interceptors.
+     */
+    final SelectorEngine engine;
     final ExecutorService executor;
     final Dispatcher dispatcher;
     final Connection connection;
@@ -46,9 +56,16 @@ public final class NetBird implements Call.Factory {
     final long cacheSize;
     final File cachePath;
     final int maxRunning;
+    final int maxWaiting;
+    final int maxRunningPerHost;
+    final int maxRunningPerTag;
+    final long priorityAging;
+    final Backpressure backpressure;
     final int readTimeOut;
     final int connectTimeOut;
     final boolean gzipEnabled;
+    final boolean virtualThreads;
+    final boolean selectorEngine;
 
     private NetBird(Builder builder) {
         this.platform = builder.platform;
@@ -65,15 +82,51 @@ public final class NetBird implements Call.Factory {
         this.cacheSize = builder.cacheSize;
         this.cachePath = builder.cachePath;
         this.maxRunning = builder.maxRunning;
+        this.maxWaiting = builder.maxWaiting;
+        this.maxRunningPerHost = builder.maxRunningPerHost;
+        this.maxRunningPerTag = builder.maxRunningPerTag;
+        this.priorityAging = builder.priorityAging;
+        this.backpressure = builder.backpressure;
         this.readTimeOut = builder.readTimeOut;
         this.connectTimeOut = builder.connectTimeOut;
         this.gzipEnabled = builder.gzipEnabled;
+        this.bridgeInterceptor = new BridgeInterceptor(baseUrl, headerManager);
+        this.gzipInterceptor = new GzipInterceptor(gzipEnabled);
+        this.interceptors = buildInterceptors();
+        this.virtualThreads = builder.virtualThreads;
+        this.selectorEngine = builder.selectorEngine;
+        this.engine = builder.usesEngine() ? openEngine() : null;
         Platform.instance = this.platform;
         dispatcher.setExecutor(this.executor);
         dispatcher.setMaxRunning(this.maxRunning);
+        dispatcher.setMaxWaiting(this.maxWaiting);
+        dispatcher.setMaxRunningPerHost(this.maxRunningPerHost);
+        dispatcher.setMaxRunningPerTag(this.maxRunningPerTag);
+        dispatcher.setPriorityAging(this.priorityAging);
+        dispatcher.setBackpressure(this.backpressure);
         Log.threshold = builder.logLevel;
     }
 
+    private Interceptor[] buildInterceptors() {
+        final int size = headInterceptors.size() + tailInterceptors.size() + 3;
+        final List<Interceptor> interceptors = new ArrayList<>(size);
+        interceptors.addAll(headInterceptors);
+        interceptors.add(bridgeInterceptor);
+        interceptors.addAll(tailInterceptors);
+        interceptors.add(gzipInterceptor);
+        interceptors.add(new ConnectionInterceptor(this));
+        return interceptors.toArray(new Interceptor[size]);
+    }
+
+    private static SelectorEngine openEngine() {
+        try {
+            return SelectorEngine.get();
+        } catch (IOException e) {
+            Log.e(e);
+            return null;
+        }
+    }
+
     @Override
     public Call newCall(Request request) {
         return new RealCall(this, request);
@@ -82,7 +135,7 @@ public final class NetBird implements Call.Factory {
     public <T> T execute(MRequest<T> request) throws IOException {
         final Response response = newCall(request).execute();
         if (response.code == 200 && response.responseBody != null) {
-            return request.parser.parse(response).data;
+            return MCallback.parse(request.parser, response, request.listener).data;
         }
         return null;
     }
@@ -92,6 +145,50 @@ public final class NetBird implements Call.Factory {
         return request.tag;
     }
 
+    /**
+     * @return the number of asynchronous calls which are running.
+     */
+    public int runningCalls() {
+        return dispatcher.runningAsyncCount();
+    }
+
+    /**
+     * @return the number of asynchronous calls which are waiting for a running slot.
+     */
+    public int waitingCalls() {
+        return dispatcher.waitingAsyncCount();
+    }
+
+    /**
+     * @return the number of asynchronous calls with the priority which are waiting for a running slot.
+     */
+    public int waitingCalls(Priority priority) {
+        if (priority == null) throw new IllegalArgumentException("priority == null");
+        return dispatcher.waitingAsyncCount(priority);
+    }
+
+    /**
+     * @return the number of asynchronous calls failed with {@link HttpStatus#CODE_TOO_MANY_REQUESTS}
+     * because no waiting slot was free or the executor rejected them.
+     */
+    public long rejectedCalls() {
+        return dispatcher.rejectedCount();
+    }
+
+    /**
+     * @return the number of waiting calls failed to make room for a call of higher priority.
+     */
+    public long shedCalls() {
+        return dispatcher.shedCount();
+    }
+
+    /**
+     * @return the number of times a thread had to wait for a waiting slot.
+     */
+    public long blockedCalls() {
+        return dispatcher.blockedCount();
+    }
+
     public void cancelWaiting(Object tag) {
         if (tag != null) {
             dispatcher.cancelWaiting(tag);
@@ -124,6 +221,13 @@ public final class NetBird implements Call.Factory {
         return connection.clone();
     }
 
+    /**
+     * @return true if the calls use an {@link Http2Connection}.
+     */
+    public boolean http2() {
+        return connection instanceof Http2Connection;
+    }
+
     public HeaderManager headerManager() {
         return headerManager;
     }
@@ -152,6 +256,30 @@ public final class NetBird implements Call.Factory {
         return maxRunning;
     }
 
+    public int maxWaiting() {
+        return maxWaiting;
+    }
+
+    public int maxRunningPerHost() {
+        return maxRunningPerHost;
+    }
+
+    public int maxRunningPerTag() {
+        return maxRunningPerTag;
+    }
+
+    public long priorityAging() {
+        return priorityAging;
+    }
+
+    public Backpressure backpressure() {
+        return backpressure;
+    }
+
+    public boolean lockFreeDispatcher() {
+        return dispatcher.lockFree;
+    }
+
     public int readTimeOut() {
         return readTimeOut;
     }
@@ -164,6 +292,17 @@ public final class NetBird implements Call.Factory {
         return gzipEnabled;
     }
 
+    /**
+     * @return true if the asynchronous calls run on virtual threads.
+     */
+    public boolean virtualThreads() {
+        return virtualThreads;
+    }
+
+    public boolean selectorEngine() {
+        return selectorEngine;
+    }
+
     public Builder newBuilder() {
         return new Builder(this);
     }
@@ -184,9 +323,17 @@ public final class NetBird implements Call.Factory {
         private long cacheSize;
         private File cachePath;
         private int maxRunning;
+        private int maxWaiting;
+        private int maxRunningPerHost;
+        private int maxRunningPerTag;
+        private long priorityAging;
+        private Backpressure backpressure;
+        private boolean lockFreeDispatcher;
         private int readTimeOut;
         private int connectTimeOut;
         private boolean gzipEnabled;
+        private boolean virtualThreads;
+        private boolean selectorEngine;
         private Level logLevel;
 
         public Builder(String baseUrl) {
@@ -195,7 +342,7 @@ public final class NetBird implements Call.Factory {
             this.headInterceptors = new ArrayList<>(2);
             this.tailInterceptors = new ArrayList<>(2);
             this.executor = null;
-            this.dispatcher = new Dispatcher();
+            this.dispatcher = null;
             this.connection = this.platform.connection();
             this.headerManager = HeaderManager.EMPTY;
             this.proxy = null;
@@ -204,9 +351,17 @@ public final class NetBird implements Call.Factory {
             this.cacheSize = -1L;
             this.cachePath = null;
             this.maxRunning = 6;
+            this.maxWaiting = Integer.MAX_VALUE;
+            this.maxRunningPerHost = Integer.MAX_VALUE;
+            this.maxRunningPerTag = Integer.MAX_VALUE;
+            this.priorityAging = 5000L;
+            this.backpressure = Backpressure.FAIL_FAST;
+            this.lockFreeDispatcher = false;
             this.readTimeOut = 10000;
             this.connectTimeOut = 10000;
             this.gzipEnabled = false;
+            this.virtualThreads = false;
+            this.selectorEngine = false;
             this.logLevel = Level.NOTHING;
         }
 
@@ -225,9 +380,17 @@ public final class NetBird implements Call.Factory {
             this.cacheSize = netBird.cacheSize;
             this.cachePath = netBird.cachePath;
             this.maxRunning = netBird.maxRunning;
+            this.maxWaiting = netBird.maxWaiting;
+            this.maxRunningPerHost = netBird.maxRunningPerHost;
+            this.maxRunningPerTag = netBird.maxRunningPerTag;
+            this.priorityAging = netBird.priorityAging;
+            this.backpressure = netBird.backpressure;
+            this.lockFreeDispatcher = netBird.dispatcher.lockFree;
             this.readTimeOut = netBird.readTimeOut;
             this.connectTimeOut = netBird.connectTimeOut;
             this.gzipEnabled = netBird.gzipEnabled;
+            this.virtualThreads = netBird.virtualThreads;
+            this.selectorEngine = netBird.selectorEngine;
             this.logLevel = Log.threshold;
         }
 
@@ -262,6 +425,7 @@ public final class NetBird implements Call.Factory {
         public Builder executor(ExecutorService executor) {
             if (executor == null) throw new IllegalArgumentException("executor == null");
             this.executor = executor;
+            this.virtualThreads = false;
             return this;
         }
 
@@ -271,6 +435,24 @@ public final class NetBird implements Call.Factory {
             return this;
         }
 
+        /**
+         * If enabled, the calls use an {@link Http2Connection} so those to the same host share one
+         * multiplexed connection, the connection is left unchanged if the runtime doesn't support it.
+         * If disabled, an {@link Http2Connection} is replaced by the connection of the platform.
+         *
+         * @see Http2Connection#isSupported()
+         */
+        public Builder http2(boolean enabled) {
+            if (enabled) {
+                if (!(connection instanceof Http2Connection) && Http2Connection.isSupported()) {
+                    this.connection = new Http2Connection();
+                }
+            } else if (connection instanceof Http2Connection) {
+                this.connection = platform.connection();
+            }
+            return this;
+        }
+
         public Builder headerManager(HeaderManager headerManager) {
             if (headerManager == null) throw new IllegalArgumentException("headerManager == null");
             this.headerManager = headerManager;
@@ -312,6 +494,74 @@ public final class NetBird implements Call.Factory {
             return this;
         }
 
+        /**
+         * The max number of asynchronous calls running at the same time against one host,
+         * waiting calls are promoted round-robin across hosts.
+         */
+        public Builder maxRunningPerHost(int maxRunningPerHost) {
+            if (maxRunningPerHost < 1) {
+                throw new IllegalArgumentException("maxRunningPerHost(" + maxRunningPerHost + ") < 1");
+            }
+            this.maxRunningPerHost = maxRunningPerHost;
+            return this;
+        }
+
+        /**
+         * The max number of asynchronous calls running at the same time with the same {@link Request#tag()}.
+         */
+        public Builder maxRunningPerTag(int maxRunningPerTag) {
+            if (maxRunningPerTag < 1) {
+                throw new IllegalArgumentException("maxRunningPerTag(" + maxRunningPerTag + ") < 1");
+            }
+            this.maxRunningPerTag = maxRunningPerTag;
+            return this;
+        }
+
+        /**
+         * A waiting call is promoted as if its {@link Priority} was one level higher
+         * for every {@code milliseconds} it has waited, so low priority calls are not starved.
+         */
+        public Builder priorityAging(long milliseconds) {
+            if (milliseconds <= 0L) {
+                throw new IllegalArgumentException("priorityAging(" + milliseconds + ") <= 0L");
+            }
+            this.priorityAging = milliseconds;
+            return this;
+        }
+
+        /**
+         * The max number of asynchronous calls waiting for a running slot,
+         * calls beyond it are handled by {@link #backpressure(Backpressure)}.
+         */
+        public Builder maxWaiting(int maxWaiting) {
+            if (maxWaiting < 1) {
+                throw new IllegalArgumentException("maxWaiting(" + maxWaiting + ") < 1");
+            }
+            this.maxWaiting = maxWaiting;
+            return this;
+        }
+
+        /**
+         * What to do with an asynchronous call when {@link #maxWaiting(int)} calls are already waiting.
+         */
+        public Builder backpressure(Backpressure backpressure) {
+            if (backpressure == null) throw new IllegalArgumentException("backpressure == null");
+            this.backpressure = backpressure;
+            return this;
+        }
+
+        /**
+         * If enabled, the dispatcher claims running slots with CAS instead of holding
+         * a global monitor on every enqueue and every finished call.
+         * It keeps one FIFO lane per {@link Priority} and promotes the head with the highest
+         * priority after {@link #priorityAging(long)}, but can't be combined with
+         * {@link #maxRunningPerHost(int)} or {@link #maxRunningPerTag(int)}.
+         */
+        public Builder lockFreeDispatcher(boolean enabled) {
+            this.lockFreeDispatcher = enabled;
+            return this;
+        }
+
         public Builder readTimeOut(int milliseconds) {
             if (milliseconds <= 0) {
                 throw new IllegalArgumentException("readTimeOut(" + milliseconds + ") < 0");
@@ -333,6 +583,30 @@ public final class NetBird implements Call.Factory {
             return this;
         }
 
+        /**
+         * If enabled, every asynchronous call runs on its own virtual thread and {@link #maxRunning(int)}
+         * only limits how many of them are in flight, so it can be raised far beyond the size of a thread pool.
+         * It replaces the executor set by {@link #executor(ExecutorService)} and falls back to the default
+         * thread pool if the runtime doesn't support virtual threads.
+         */
+        public Builder virtualThreads(boolean enabled) {
+            if (enabled && !this.virtualThreads) this.executor = null;
+            this.virtualThreads = enabled;
+            return this;
+        }
+
+        /**
+         * If enabled, asynchronous calls to plain http urls are exchanged by a shared selector thread and
+         * no executor thread waits for the network, so {@link #maxRunning(int)} can be raised to thousands
+         * while the default executor keeps a few threads. The responses are buffered in memory.
+         * Calls with a download listener, a large or streamed request body, a proxy or https urls, and every
+         * call if there are head or tail interceptors, still run the blocking {@link Connection}.
+         */
+        public Builder selectorEngine(boolean enabled) {
+            this.selectorEngine = enabled;
+            return this;
+        }
+
         public Builder logLevel(Level level) {
             if (level == null) throw new IllegalArgumentException("level == null");
             this.logLevel = level;
@@ -340,8 +614,24 @@ public final class NetBird implements Call.Factory {
         }
 
         public NetBird build() {
-            if (executor == null) executor = Utils.defaultService(maxRunning);
+            if (lockFreeDispatcher && (maxRunningPerHost != Integer.MAX_VALUE || maxRunningPerTag != Integer.MAX_VALUE)) {
+                throw new IllegalStateException("the lock-free dispatcher doesn't support maxRunningPerHost or maxRunningPerTag");
+            }
+            if (executor == null && virtualThreads) {
+                executor = Utils.virtualThreadService();
+                virtualThreads = (executor != null);
+            }
+            if (executor == null) {
+                executor = Utils.defaultService(usesEngine() ? Math.min(maxRunning, SelectorEngine.WORKERS) : maxRunning);
+            }
+            if (dispatcher == null || dispatcher.lockFree != lockFreeDispatcher) {
+                dispatcher = new Dispatcher(lockFreeDispatcher);
+            }
             return new NetBird(this);
         }
+
+        private boolean usesEngine() {
+            return selectorEngine && headInterceptors.isEmpty() && tailInterceptors.isEmpty();
+        }
     }
 }
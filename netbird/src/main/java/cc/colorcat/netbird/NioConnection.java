@@ -0,0 +1,693 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * An HTTP/1.1 {@link Connection} over {@link SocketChannel} which keeps the sockets alive in a
+ * {@link ConnectionPool}. A socket goes back to the pool as soon as the response body has been read
+ * completely and is closed when the body is abandoned or the call is canceled.
+ * If a pooled socket turns out to have been closed by the server before any byte of the response,
+ * an idempotent request without a body is sent once more on a new socket.
+ * Only direct connections and HTTP proxies are supported.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public final class NioConnection implements Connection {
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    /**
+     * The most bytes of an unread response body skipped to keep the socket alive.
+     */
+    private static final int DISCARD_LIMIT = 8192;
+
+    private final ConnectionPool pool;
+    private PooledSocket socket;
+    private StringBuilder pendingHead;
+    /**
+     * What is needed to send the request again on a new socket, null once it can't be retried.
+     */
+    private Retry retry;
+    private volatile boolean canceled = false;
+    private boolean keepAlive = true;
+    private boolean headRequest = false;
+    private boolean chunkedRequest = false;
+
+    private int code = -1;
+    private String msg;
+    private Headers headers;
+    private BodyStream body;
+
+    public NioConnection() {
+        this(new ConnectionPool());
+    }
+
+    public NioConnection(ConnectionPool pool) {
+        if (pool == null) throw new IllegalArgumentException("pool == null");
+        this.pool = pool;
+    }
+
+    public ConnectionPool pool() {
+        return pool;
+    }
+
+    @Override
+    public void connect(NetBird netBird, Request request) throws IOException {
+        final URL url = new URL(request.url);
+        final String scheme = url.getProtocol();
+        final boolean tls = "https".equalsIgnoreCase(scheme);
+        if (!tls && !"http".equalsIgnoreCase(scheme)) {
+            throw new ProtocolException("unsupported scheme: " + scheme);
+        }
+        final Proxy proxy = netBird.proxy;
+        final boolean proxied = proxy != null && proxy.type() != Proxy.Type.DIRECT;
+        if (proxied && proxy.type() != Proxy.Type.HTTP) {
+            throw new ProtocolException("unsupported proxy: " + proxy);
+        }
+        final String host = url.getHost();
+        final int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        final String route = scheme + "://" + host + ':' + port + (proxied ? " via " + proxy.address() : "");
+
+        PooledSocket socket = pool.get(route);
+        if (socket == null) {
+            socket = open(netBird, route, tls, host, port, proxied ? proxy : null);
+        } else {
+            socket.socket.setSoTimeout(netBird.readTimeOut);
+            if (request.method != Method.POST) {
+                retry = new Retry(netBird, route, tls, host, port, proxied ? proxy : null);
+            }
+        }
+        synchronized (this) {
+            this.socket = socket;
+        }
+        if (canceled) {
+            release(false);
+            throw HttpStatus.requestCanceled();
+        }
+
+        headRequest = request.method == Method.HEAD;
+        final String file = url.getFile();
+        final String target = proxied && !tls ? url.toString() : (file.isEmpty() ? "/" : file);
+        final String authority = port == url.getDefaultPort() ? host : host + ':' + port;
+        pendingHead = new StringBuilder(256)
+                .append(request.method.name()).append(' ').append(target).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(authority).append("\r\n");
+    }
+
+    @Override
+    public void writeHeaders(Headers headers) throws IOException {
+        final StringBuilder head = pendingHead;
+        for (int i = 0, size = headers.size(); i < size; ++i) {
+            final String name = headers.name(i);
+            // like HttpURLConnection, the Host header is derived from the url
+            if ("Host".equalsIgnoreCase(name)) continue;
+            head.append(name).append(": ").append(headers.value(i)).append("\r\n");
+        }
+        chunkedRequest = "chunked".equalsIgnoreCase(headers.value("Transfer-Encoding"));
+        if ("close".equalsIgnoreCase(headers.value("Connection"))) {
+            keepAlive = false;
+        }
+        writeHead();
+    }
+
+    @Override
+    public void writeRequestBody(RequestBody requestBody) throws IOException {
+        writeHead();
+        // the body can't be written twice
+        retry = null;
+        final RequestBodyStream stream = new RequestBodyStream(socket().output, chunkedRequest);
+        final OutputStream output = chunkedRequest ? new BufferedOutputStream(stream, 8192) : stream;
+        try {
+            requestBody.writeTo(output);
+            output.close();
+        } catch (IOException e) {
+            release(false);
+            throw e;
+        }
+    }
+
+    @Override
+    public int responseCode() throws IOException {
+        readResponse();
+        return code;
+    }
+
+    @Override
+    public String responseMsg() throws IOException {
+        readResponse();
+        return msg;
+    }
+
+    @Override
+    public Headers responseHeaders() throws IOException {
+        readResponse();
+        return headers;
+    }
+
+    @Override
+    public ResponseBody responseBody(Headers headers) throws IOException {
+        readResponse();
+        return ResponseBody.create(body, headers);
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        release(false);
+    }
+
+    @SuppressWarnings("CloneDoesntCallSuperClone")
+    @Override
+    public Connection clone() {
+        return new NioConnection(pool);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (body != null) {
+            body.close();
+        }
+        release(false);
+    }
+
+    private void writeHead() throws IOException {
+        final StringBuilder head = pendingHead;
+        if (head != null) {
+            pendingHead = null;
+            head.append("\r\n");
+            final byte[] bytes = head.toString().getBytes(ISO_8859_1);
+            if (retry != null) {
+                retry.head = bytes;
+            }
+            try {
+                socket().output.write(bytes);
+            } catch (IOException e) {
+                retry(e);
+            }
+        }
+    }
+
+    /**
+     * Sends the request head again on a new socket if the request may be retried.
+     *
+     * @throws IOException the cause if it may not.
+     */
+    private PooledSocket retry(IOException cause) throws IOException {
+        final Retry retry = this.retry;
+        this.retry = null;
+        if (retry == null || retry.head == null || canceled) throw cause;
+        release(false);
+        final PooledSocket socket = open(retry.netBird, retry.route, retry.tls, retry.host, retry.port, retry.proxy);
+        synchronized (this) {
+            this.socket = socket;
+        }
+        if (canceled) {
+            release(false);
+            throw HttpStatus.requestCanceled();
+        }
+        socket.output.write(retry.head);
+        return socket;
+    }
+
+    private void readResponse() throws IOException {
+        if (code != -1) return;
+        try {
+            readStatusAndHeaders();
+        } catch (IOException e) {
+            release(false);
+            throw e;
+        }
+    }
+
+    private void readStatusAndHeaders() throws IOException {
+        writeHead();
+        PooledSocket socket = socket();
+        try {
+            awaitResponse(socket);
+        } catch (IOException e) {
+            socket = retry(e);
+            awaitResponse(socket);
+        }
+        retry = null;
+        final InputStream input = socket.input;
+        String statusLine;
+        int code;
+        Headers headers;
+        do {
+            statusLine = readLine(input);
+            code = parseCode(statusLine);
+            headers = readHeaders(input);
+        } while (code >= 100 && code < 200 && code != 101);
+
+        final String connection = headers.value("Connection");
+        if (statusLine.startsWith("HTTP/1.0")
+                ? !"keep-alive".equalsIgnoreCase(connection)
+                : "close".equalsIgnoreCase(connection)) {
+            keepAlive = false;
+        }
+        final long contentLength;
+        if (headRequest || code == 204 || code == 304) {
+            body = new FixedLengthStream(input, 0L);
+        } else if ("chunked".equalsIgnoreCase(headers.value("Transfer-Encoding"))) {
+            body = new ChunkedStream(input);
+        } else if ((contentLength = headers.contentLength()) != -1L) {
+            body = new FixedLengthStream(input, contentLength);
+        } else {
+            keepAlive = false;
+            body = new UntilEofStream(input);
+        }
+        this.msg = statusLine.length() > 13 ? statusLine.substring(13) : "";
+        this.headers = headers;
+        this.code = code;
+    }
+
+    /**
+     * Flushes the request and waits for the first byte of the response without consuming it,
+     * a stale pooled socket fails in here.
+     */
+    private static void awaitResponse(PooledSocket socket) throws IOException {
+        socket.output.flush();
+        final InputStream input = socket.input;
+        input.mark(1);
+        if (input.read() == -1) throw new EOFException("unexpected end of stream");
+        input.reset();
+    }
+
+    private synchronized PooledSocket socket() throws IOException {
+        if (socket == null) {
+            if (canceled) throw HttpStatus.requestCanceled();
+            throw new IOException("connection released");
+        }
+        return socket;
+    }
+
+    /**
+     * Detaches the socket, it returns to the pool only if the exchange completed and both peers keep it alive.
+     */
+    private void release(boolean recycle) {
+        final PooledSocket socket;
+        synchronized (this) {
+            socket = this.socket;
+            this.socket = null;
+        }
+        if (socket != null) {
+            if (recycle && keepAlive && !canceled) {
+                pool.put(socket);
+            } else {
+                socket.close();
+            }
+        }
+    }
+
+    private static PooledSocket open(NetBird netBird, String route, boolean tls, String host, int port, Proxy proxy) throws IOException {
+        final InetSocketAddress address;
+        if (proxy == null) {
+            address = new InetSocketAddress(host, port);
+        } else {
+            final InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
+            address = proxyAddress.isUnresolved()
+                    ? new InetSocketAddress(proxyAddress.getHostName(), proxyAddress.getPort())
+                    : proxyAddress;
+        }
+        final SocketChannel channel = SocketChannel.open();
+        try {
+            final Socket socket = channel.socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address, netBird.connectTimeOut);
+            socket.setSoTimeout(netBird.readTimeOut);
+            if (!tls) {
+                return new PooledSocket(route, channel, socket);
+            }
+            if (proxy != null) {
+                tunnel(socket, host, port);
+            }
+            return new PooledSocket(route, channel, handshake(netBird, socket, host, port));
+        } catch (IOException e) {
+            Utils.close(channel);
+            throw e;
+        }
+    }
+
+    private static void tunnel(Socket socket, String host, int port) throws IOException {
+        final String authority = host + ':' + port;
+        final String head = "CONNECT " + authority + " HTTP/1.1\r\n"
+                + "Host: " + authority + "\r\n"
+                + "Proxy-Connection: Keep-Alive\r\n\r\n";
+        final OutputStream output = socket.getOutputStream();
+        output.write(head.getBytes(ISO_8859_1));
+        output.flush();
+        // read unbuffered, nothing after the response may be consumed before the handshake
+        final InputStream input = socket.getInputStream();
+        final int code = parseCode(readLine(input));
+        readHeaders(input);
+        if (code != 200) {
+            throw new ProtocolException("unexpected response code for CONNECT: " + code);
+        }
+    }
+
+    private static Socket handshake(NetBird netBird, Socket socket, String host, int port) throws IOException {
+        SSLSocketFactory factory = netBird.sslSocketFactory;
+        if (factory == null) factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+        final SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, host, port, true);
+        HostnameVerifier verifier = netBird.hostnameVerifier;
+        if (verifier == null) {
+            try {
+                final SSLParameters parameters = sslSocket.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(parameters);
+            } catch (NoSuchMethodError e) {
+                // before Android 7.0, verify after the handshake instead
+                verifier = HttpsURLConnection.getDefaultHostnameVerifier();
+            }
+        }
+        sslSocket.startHandshake();
+        if (verifier != null && !verifier.verify(host, sslSocket.getSession())) {
+            throw new SSLPeerUnverifiedException("hostname " + host + " not verified");
+        }
+        return sslSocket;
+    }
+
+    static int parseCode(String statusLine) throws IOException {
+        if (statusLine.length() >= 12 && statusLine.startsWith("HTTP/1.") && statusLine.charAt(8) == ' ') {
+            try {
+                return Integer.parseInt(statusLine.substring(9, 12));
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        throw new ProtocolException("unexpected status line: " + statusLine);
+    }
+
+    private static Headers readHeaders(InputStream input) throws IOException {
+        final MutableHeaders headers = MutableHeaders.create(16);
+        for (String line = readLine(input); !line.isEmpty(); line = readLine(input)) {
+            try {
+                headers.addLine(line);
+            } catch (IllegalArgumentException e) {
+                throw new ProtocolException(e.getMessage());
+            }
+        }
+        return headers.toHeaders();
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        final StringBuilder line = new StringBuilder(64);
+        for (int b = input.read(); b != '\n'; b = input.read()) {
+            if (b == -1) throw new EOFException("unexpected end of stream");
+            if (line.length() == MAX_LINE_LENGTH) throw new ProtocolException("line too long");
+            line.append((char) b);
+        }
+        final int last = line.length() - 1;
+        if (last >= 0 && line.charAt(last) == '\r') {
+            line.setLength(last);
+        }
+        return line.toString();
+    }
+
+
+    private static final class Retry {
+        private final NetBird netBird;
+        private final String route;
+        private final boolean tls;
+        private final String host;
+        private final int port;
+        private final Proxy proxy;
+        private byte[] head;
+
+        private Retry(NetBird netBird, String route, boolean tls, String host, int port, Proxy proxy) {
+            this.netBird = netBird;
+            this.route = route;
+            this.tls = tls;
+            this.host = host;
+            this.port = port;
+            this.proxy = proxy;
+        }
+    }
+
+
+    private static final class RequestBodyStream extends FilterOutputStream {
+        private final boolean chunked;
+        private boolean finished = false;
+
+        private RequestBodyStream(OutputStream output, boolean chunked) {
+            super(output);
+            this.chunked = chunked;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (finished) throw new IOException("closed");
+            if (len == 0) return;
+            if (chunked) {
+                out.write(Integer.toHexString(len).getBytes(ISO_8859_1));
+                out.write(CRLF);
+                out.write(b, off, len);
+                out.write(CRLF);
+            } else {
+                out.write(b, off, len);
+            }
+        }
+
+        /**
+         * Finishes the body but keeps the socket open.
+         */
+        @Override
+        public void close() throws IOException {
+            if (finished) return;
+            finished = true;
+            if (chunked) {
+                out.write(new byte[]{'0', '\r', '\n', '\r', '\n'});
+            }
+            out.flush();
+        }
+    }
+
+
+    private abstract class BodyStream extends InputStream {
+        final InputStream input;
+        boolean exhausted = false;
+        boolean closed = false;
+
+        BodyStream(InputStream input) {
+            this.input = input;
+        }
+
+        final void endOfBody() {
+            exhausted = true;
+            release(true);
+        }
+
+        final IOException failed(IOException cause) {
+            closed = true;
+            release(false);
+            return cause;
+        }
+
+        final void checkNotClosed() throws IOException {
+            if (closed) throw new IOException("closed");
+        }
+
+        /**
+         * Skips the rest of the body without blocking.
+         *
+         * @return true if the body has been read completely.
+         */
+        boolean discard() {
+            return false;
+        }
+
+        @Override
+        public final int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public final void close() {
+            if (closed) return;
+            closed = true;
+            if (!exhausted && !discard()) {
+                release(false);
+            }
+        }
+    }
+
+
+    private final class FixedLengthStream extends BodyStream {
+        private long remaining;
+
+        private FixedLengthStream(InputStream input, long length) {
+            super(input);
+            this.remaining = length;
+            if (length == 0L) {
+                endOfBody();
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkNotClosed();
+            if (remaining == 0L) return -1;
+            if (len == 0) return 0;
+            final int read;
+            try {
+                read = input.read(b, off, (int) Math.min(len, remaining));
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            if (read == -1) throw failed(new ProtocolException("unexpected end of stream"));
+            remaining -= read;
+            if (remaining == 0L) {
+                endOfBody();
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return closed ? 0 : (int) Math.min(input.available(), remaining);
+        }
+
+        @Override
+        boolean discard() {
+            try {
+                if (remaining > DISCARD_LIMIT || input.available() < remaining) return false;
+                while (remaining > 0L) {
+                    final long skipped = input.skip(remaining);
+                    if (skipped <= 0L) return false;
+                    remaining -= skipped;
+                }
+                endOfBody();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+
+    private final class ChunkedStream extends BodyStream {
+        private long chunkRemaining = 0L;
+        private boolean firstChunk = true;
+
+        private ChunkedStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkNotClosed();
+            if (exhausted) return -1;
+            if (len == 0) return 0;
+            try {
+                if (chunkRemaining == 0L) {
+                    if (!firstChunk && !readLine(input).isEmpty()) {
+                        throw new ProtocolException("expected CRLF after chunk");
+                    }
+                    firstChunk = false;
+                    chunkRemaining = readChunkSize();
+                    if (chunkRemaining == 0L) {
+                        // skip the trailers
+                        while (!readLine(input).isEmpty()) ;
+                        endOfBody();
+                        return -1;
+                    }
+                }
+                final int read = input.read(b, off, (int) Math.min(len, chunkRemaining));
+                if (read == -1) throw new ProtocolException("unexpected end of stream");
+                chunkRemaining -= read;
+                return read;
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+
+        private long readChunkSize() throws IOException {
+            String line = readLine(input);
+            final int extension = line.indexOf(';');
+            if (extension != -1) line = line.substring(0, extension);
+            try {
+                final long size = Long.parseLong(line.trim(), 16);
+                if (size < 0L) throw new NumberFormatException();
+                return size;
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("unexpected chunk size: " + line);
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return closed || exhausted ? 0 : (int) Math.min(input.available(), chunkRemaining);
+        }
+    }
+
+
+    private final class UntilEofStream extends BodyStream {
+
+        private UntilEofStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkNotClosed();
+            if (exhausted) return -1;
+            final int read;
+            try {
+                read = input.read(b, off, len);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+            if (read == -1) {
+                endOfBody();
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return closed || exhausted ? 0 : input.available();
+        }
+    }
+}
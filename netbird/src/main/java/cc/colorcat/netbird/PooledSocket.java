@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A socket which may be kept alive in {@link ConnectionPool} and reused by {@link NioConnection}.
+ * The channel stays in blocking mode except while it is probed by {@link #isHealthy()}.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+final class PooledSocket implements Closeable {
+    final String route;
+    final SocketChannel channel;
+    /**
+     * The socket of {@link #channel} or the TLS socket layered over it.
+     */
+    final Socket socket;
+    final InputStream input;
+    final OutputStream output;
+    private final ByteBuffer probe = ByteBuffer.allocate(1);
+    long idleSince;
+
+    PooledSocket(String route, SocketChannel channel, Socket socket) throws IOException {
+        this.route = route;
+        this.channel = channel;
+        this.socket = socket;
+        this.input = new BufferedInputStream(socket.getInputStream(), 8192);
+        this.output = new BufferedOutputStream(socket.getOutputStream(), 8192);
+    }
+
+    /**
+     * @return false if the peer has closed the socket or sent unexpected data while it was idle.
+     */
+    boolean isHealthy() {
+        if (!channel.isOpen() || socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+        try {
+            if (input.available() > 0) return false;
+            channel.configureBlocking(false);
+            try {
+                probe.clear();
+                return channel.read(probe) == 0;
+            } finally {
+                channel.configureBlocking(true);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Log.e(e);
+        }
+        Utils.close(channel);
+    }
+
+    @Override
+    public String toString() {
+        return "PooledSocket{" +
+                "route='" + route + '\'' +
+                ", socket=" + socket +
+                '}';
+    }
+}
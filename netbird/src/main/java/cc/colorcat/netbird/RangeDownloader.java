@@ -0,0 +1,477 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Downloads one resource with several parallel {@code Range} requests sent through {@link NetBird},
+ * each segment is written at its own offset of a preallocated file.
+ * <p>
+ * The progress is saved next to the target as "&lt;name&gt;.progress" while the data goes to "&lt;name&gt;.part",
+ * an interrupted or canceled download resumes from there when downloaded again, as long as the server
+ * still reports the same length, ETag and Last-Modified. The part file is renamed to the target once complete.
+ * <p>
+ * If the server ignores {@code Range}, the body of the probing request is saved as a whole instead.
+ * All segment calls share the tag of the template request, so {@link NetBird#maxRunningPerTag()} caps
+ * how many of them run at once.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public final class RangeDownloader {
+    private static final long MIN_SEGMENT_SIZE = 256L * 1024L;
+    /**
+     * How many bytes a segment writes between two saves of the progress.
+     */
+    private static final long CHECKPOINT_SIZE = 4L * 1024L * 1024L;
+
+    private final NetBird netBird;
+    private final Request request;
+    private final File savePath;
+    private final File partFile;
+    private final File progressFile;
+    private final int segmentCount;
+    private final DownloadListener listener;
+
+    private final List<Call> calls = new ArrayList<>();
+    private volatile boolean canceled = false;
+
+    private RangeDownloader(Builder builder) {
+        this.netBird = builder.netBird;
+        this.request = builder.request;
+        this.savePath = builder.savePath;
+        this.partFile = new File(savePath.getPath() + ".part");
+        this.progressFile = new File(savePath.getPath() + ".progress");
+        this.segmentCount = builder.segments;
+        this.listener = MDownloadListener.wrap(builder.listener);
+    }
+
+    /**
+     * Blocks until the whole resource has been saved, don't call it on the main thread.
+     *
+     * @return the file it has been saved to.
+     */
+    public File download() throws IOException {
+        if (canceled) throw HttpStatus.requestCanceled();
+        final Response probe = newCall(request.newBuilder()
+                .setHeader("Range", "bytes=0-0")
+                .clearDownloadListener()
+                .build()).execute();
+        final ResponseBody body = probe.responseBody();
+        try {
+            final long length = parseLength(probe);
+            if (probe.responseCode() == 200) {
+                saveWhole(body, length);
+                return savePath;
+            }
+            if (probe.responseCode() != 206 || length < 0L) {
+                throw new StateIOException(probe.responseCode(), probe.responseMsg(), null);
+            }
+            final String validator = Utils.nullElse(probe.header("ETag"), "") + '|' + Utils.nullElse(probe.header("Last-Modified"), "");
+            Utils.close(body);
+            downloadSegments(length, validator);
+            return savePath;
+        } finally {
+            Utils.close(body);
+            synchronized (calls) {
+                calls.clear();
+            }
+        }
+    }
+
+    /**
+     * Stops the download, the progress made so far is kept and {@link #download()} throws.
+     */
+    public void cancel() {
+        canceled = true;
+        cancelCalls();
+    }
+
+    private void cancelCalls() {
+        synchronized (calls) {
+            for (Call call : calls) {
+                call.cancel();
+            }
+            calls.clear();
+        }
+    }
+
+    private Call newCall(Request request) throws IOException {
+        final Call call = netBird.newCall(request);
+        synchronized (calls) {
+            if (canceled) throw HttpStatus.requestCanceled();
+            calls.add(call);
+        }
+        return call;
+    }
+
+    private void saveWhole(ResponseBody body, long length) throws IOException {
+        final Progress progress = new Progress(length, 0L);
+        final OutputStream output = new FileOutputStream(partFile);
+        try {
+            final InputStream input = body.stream();
+            final byte[] buffer = BufferPool.takeBytes();
+            try {
+                for (int count = input.read(buffer); count != -1; count = input.read(buffer)) {
+                    output.write(buffer, 0, count);
+                    progress.add(count);
+                }
+            } finally {
+                BufferPool.recycle(buffer);
+            }
+        } finally {
+            Utils.close(output);
+        }
+        progressFile.delete();
+        Utils.rename(partFile, savePath);
+    }
+
+    private void downloadSegments(long length, String validator) throws IOException {
+        Segment[] segments = loadProgress(length, validator);
+        if (segments == null) {
+            segments = split(length);
+            RandomAccessFile file = new RandomAccessFile(partFile, "rw");
+            try {
+                file.setLength(length);
+            } finally {
+                Utils.close(file);
+            }
+        }
+        long finished = 0L;
+        for (Segment segment : segments) {
+            finished += segment.written;
+        }
+        final Progress progress = new Progress(length, finished);
+        final RandomAccessFile file = new RandomAccessFile(partFile, "rw");
+        final FileChannel channel = file.getChannel();
+        final Checkpoint checkpoint = new Checkpoint(channel, segments, length, validator);
+        try {
+            checkpoint.save();
+            final CountDownLatch latch = new CountDownLatch(segments.length);
+            final AtomicReference<IOException> failure = new AtomicReference<>();
+            for (Segment segment : segments) {
+                if (segment.remaining() == 0L) {
+                    latch.countDown();
+                    continue;
+                }
+                Request segmentRequest = request.newBuilder()
+                        .setHeader("Range", "bytes=" + segment.position() + '-' + segment.end)
+                        .clearDownloadListener()
+                        .build();
+                newCall(segmentRequest).enqueue(new SegmentCallback(segment, channel, progress, checkpoint, latch, failure));
+            }
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                cancel();
+                throw new InterruptedIOException("download interrupted");
+            }
+            if (failure.get() != null) throw failure.get();
+            if (canceled) throw HttpStatus.requestCanceled();
+            channel.force(false);
+        } finally {
+            try {
+                checkpoint.save();
+            } catch (IOException e) {
+                Log.e(e);
+            } finally {
+                Utils.close(file);
+            }
+        }
+        progressFile.delete();
+        Utils.rename(partFile, savePath);
+    }
+
+    private Segment[] split(long length) {
+        final int count = (int) Math.max(1L, Math.min(segmentCount, length / MIN_SEGMENT_SIZE));
+        final Segment[] segments = new Segment[count];
+        final long size = length / count;
+        for (int i = 0; i < count; ++i) {
+            long start = i * size;
+            long end = i == count - 1 ? length - 1L : start + size - 1L;
+            segments[i] = new Segment(start, end, 0L);
+        }
+        return segments;
+    }
+
+    /**
+     * @return the saved segments if they belong to the same resource and the part file is still there, null otherwise.
+     */
+    private Segment[] loadProgress(long length, String validator) {
+        if (!progressFile.isFile() || partFile.length() != length) return null;
+        final Properties properties = new Properties();
+        InputStream input = null;
+        try {
+            input = new FileInputStream(progressFile);
+            properties.load(input);
+            if (Long.parseLong(properties.getProperty("length")) != length
+                    || !validator.equals(properties.getProperty("validator"))) {
+                return null;
+            }
+            final int count = Integer.parseInt(properties.getProperty("segments"));
+            final Segment[] segments = new Segment[count];
+            for (int i = 0; i < count; ++i) {
+                String[] values = properties.getProperty("segment." + i).split(",");
+                segments[i] = new Segment(Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]));
+            }
+            return segments;
+        } catch (IOException | RuntimeException e) {
+            Log.e(e);
+            return null;
+        } finally {
+            Utils.close(input);
+        }
+    }
+
+    private static long parseLength(Response response) {
+        if (response.responseCode() == 206) {
+            // bytes 0-0/12345
+            final String range = response.header("Content-Range");
+            final int slash = range != null ? range.lastIndexOf('/') : -1;
+            return slash != -1 ? Utils.quiteToLong(range.substring(slash + 1).trim(), -1L) : -1L;
+        }
+        return Utils.quiteToLong(response.header("Content-Length"), -1L);
+    }
+
+
+    private static final class Segment {
+        private final long start;
+        /**
+         * Inclusive, as in the {@code Range} header.
+         */
+        private final long end;
+        private volatile long written;
+
+        private Segment(long start, long end, long written) {
+            this.start = start;
+            this.end = end;
+            this.written = written;
+        }
+
+        private long position() {
+            return start + written;
+        }
+
+        private long remaining() {
+            return end - start + 1L - written;
+        }
+    }
+
+    /**
+     * Saves the segments after the data they claim has been flushed to the file.
+     */
+    private final class Checkpoint {
+        private final FileChannel channel;
+        private final Segment[] segments;
+        private final long length;
+        private final String validator;
+
+        private Checkpoint(FileChannel channel, Segment[] segments, long length, String validator) {
+            this.channel = channel;
+            this.segments = segments;
+            this.length = length;
+            this.validator = validator;
+        }
+
+        private synchronized void save() throws IOException {
+            final Properties properties = new Properties();
+            properties.setProperty("length", Long.toString(length));
+            properties.setProperty("validator", validator);
+            properties.setProperty("segments", Integer.toString(segments.length));
+            for (int i = 0; i < segments.length; ++i) {
+                Segment segment = segments[i];
+                properties.setProperty("segment." + i, segment.start + "," + segment.end + "," + segment.written);
+            }
+            if (channel.isOpen()) {
+                channel.force(false);
+            }
+            final File temp = new File(progressFile.getPath() + ".tmp");
+            final OutputStream output = new FileOutputStream(temp);
+            try {
+                properties.store(output, null);
+            } finally {
+                Utils.close(output);
+            }
+            Utils.rename(temp, progressFile);
+        }
+    }
+
+    private final class Progress {
+        private final long total;
+        private final AtomicLong finished;
+        private int lastPercent = -1;
+
+        private Progress(long total, long finished) {
+            this.total = total;
+            this.finished = new AtomicLong(finished);
+            add(0L);
+        }
+
+        private void add(long count) {
+            final long current = finished.addAndGet(count);
+            if (listener == null || total <= 0L) return;
+            final int percent = (int) (current * 100L / total);
+            synchronized (this) {
+                if (percent <= lastPercent) return;
+                lastPercent = percent;
+            }
+            listener.onChanged(current, total, percent);
+        }
+    }
+
+    private final class SegmentCallback implements Callback {
+        private final Segment segment;
+        private final FileChannel channel;
+        private final Progress progress;
+        private final Checkpoint checkpoint;
+        private final CountDownLatch latch;
+        private final AtomicReference<IOException> failure;
+
+        private SegmentCallback(Segment segment, FileChannel channel, Progress progress, Checkpoint checkpoint,
+                                CountDownLatch latch, AtomicReference<IOException> failure) {
+            this.segment = segment;
+            this.channel = channel;
+            this.progress = progress;
+            this.checkpoint = checkpoint;
+            this.latch = latch;
+            this.failure = failure;
+        }
+
+        @Override
+        public void onStart() {
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) throws IOException {
+            final ResponseBody body = response.responseBody();
+            final byte[] buffer = BufferPool.takeBytes();
+            try {
+                if (response.responseCode() != 206 || body == null) {
+                    throw new StateIOException(response.responseCode(), response.responseMsg(), null);
+                }
+                final String range = response.header("Content-Range");
+                if (range == null || !range.startsWith("bytes " + segment.position() + '-')) {
+                    throw new IOException("Unexpected Content-Range: " + range);
+                }
+                final InputStream input = body.stream();
+                long unsaved = 0L;
+                while (segment.remaining() > 0L) {
+                    int count = input.read(buffer, 0, (int) Math.min(buffer.length, segment.remaining()));
+                    if (count == -1) throw new EOFException("segment ended at " + segment.position() + ", expected " + segment.end);
+                    final ByteBuffer source = ByteBuffer.wrap(buffer, 0, count);
+                    final long position = segment.position();
+                    while (source.hasRemaining()) {
+                        channel.write(source, position + source.position());
+                    }
+                    segment.written += count;
+                    progress.add(count);
+                    unsaved += count;
+                    if (unsaved >= CHECKPOINT_SIZE) {
+                        checkpoint.save();
+                        unsaved = 0L;
+                    }
+                }
+            } finally {
+                BufferPool.recycle(buffer);
+                Utils.close(body);
+            }
+        }
+
+        @Override
+        public void onFailure(Call call, StateIOException cause) {
+            // the first failure stops the other segments, they fail as canceled afterwards
+            if (failure.compareAndSet(null, cause)) {
+                cancelCalls();
+            }
+        }
+
+        @Override
+        public void onFinish() {
+            latch.countDown();
+        }
+    }
+
+    public static final class Builder {
+        private final NetBird netBird;
+        private final Request request;
+        private final File savePath;
+        private int segments = 4;
+        private DownloadListener listener;
+
+        /**
+         * @param request  a GET request for the resource, its {@link Request#downloadListener()} is ignored.
+         * @param savePath where to save the resource.
+         */
+        public Builder(NetBird netBird, Request request, File savePath) {
+            if (netBird == null) throw new IllegalArgumentException("netBird == null");
+            if (request == null) throw new IllegalArgumentException("request == null");
+            if (savePath == null) throw new IllegalArgumentException("savePath == null");
+            if (request.method() != Method.GET) {
+                throw new IllegalArgumentException("method(" + request.method() + ") != GET");
+            }
+            this.netBird = netBird;
+            this.request = request;
+            this.savePath = savePath;
+        }
+
+        /**
+         * The max number of segments downloaded in parallel, small resources are split into fewer.
+         */
+        public Builder segments(int segments) {
+            if (segments < 1) {
+                throw new IllegalArgumentException("segments(" + segments + ") < 1");
+            }
+            this.segments = segments;
+            return this;
+        }
+
+        /**
+         * Receives the progress of all the segments together, on the target thread.
+         */
+        public Builder downloadListener(DownloadListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public RangeDownloader build() {
+            final File parent = savePath.getAbsoluteFile().getParentFile();
+            if (parent.exists() || parent.mkdirs()) {
+                return new RangeDownloader(this);
+            }
+            throw new RuntimeException("Can't create directory, " + savePath.getAbsolutePath());
+        }
+    }
+}
@@ -17,8 +17,7 @@
 package cc.colorcat.netbird;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -32,6 +31,7 @@ final class RealCall implements Call {
     private final Connection connection;
     private final AtomicBoolean executed;
     private final AtomicBoolean canceled;
+    private volatile SelectorEngine.Exchange exchange;
 
     RealCall(NetBird netBird, Request request) {
         this.netBird = netBird;
@@ -59,22 +59,20 @@ final class RealCall implements Call {
 
     @Override
     public void enqueue(Callback callback) {
+        enqueue(callback, true);
+    }
+
+    /**
+     * @param closeOnFinish false if the callback takes over the response and closes it by itself.
+     */
+    void enqueue(Callback callback, boolean closeOnFinish) {
         if (executed.getAndSet(true)) throw new IllegalStateException("Already executed");
         callback.onStart();
-        netBird.dispatcher.enqueue(new AsyncCall(callback));
+        netBird.dispatcher.enqueue(new AsyncCall(callback, closeOnFinish));
     }
 
     private Response getResponseWithInterceptorChain() throws IOException {
-        final List<Interceptor> headInterceptors = netBird.headInterceptors;
-        final List<Interceptor> tailInterceptors = netBird.tailInterceptors;
-        final int size = headInterceptors.size() + tailInterceptors.size() + 3;
-        final List<Interceptor> interceptors = new ArrayList<>(size);
-        interceptors.addAll(headInterceptors);
-        interceptors.add(new BridgeInterceptor(netBird.baseUrl, netBird.headerManager));
-        interceptors.addAll(tailInterceptors);
-        interceptors.add(new GzipInterceptor(netBird.gzipEnabled));
-        interceptors.add(new ConnectionInterceptor(netBird));
-        final Interceptor.Chain chain = new RealInterceptorChain(interceptors, 0, request, connection);
+        final Interceptor.Chain chain = new RealInterceptorChain(netBird.interceptors, request, connection);
         return chain.proceed(request);
     }
 
@@ -82,6 +80,10 @@ final class RealCall implements Call {
     public void cancel() {
         canceled.set(true);
         connection.cancel();
+        final SelectorEngine.Exchange exchange = this.exchange;
+        if (exchange != null) {
+            exchange.cancel();
+        }
     }
 
     @Override
@@ -102,6 +104,7 @@ final class RealCall implements Call {
 
         RealCall realCall = (RealCall) o;
 
+        if (request.fingerprint() != realCall.request.fingerprint()) return false;
         if (!request.equals(realCall.request)) return false;
         if (!executed.equals(realCall.executed)) return false;
         return canceled.equals(realCall.canceled);
@@ -109,7 +112,7 @@ final class RealCall implements Call {
 
     @Override
     public int hashCode() {
-        int result = request.hashCode();
+        int result = request.fingerprint();
         result = 31 * result + executed.hashCode();
         result = 31 * result + canceled.hashCode();
         return result;
@@ -127,6 +130,17 @@ final class RealCall implements Call {
 
     final class AsyncCall implements Runnable {
         private final Callback callback;
+        /**
+         * False if the callback takes over the response and closes it by itself.
+         */
+        private final boolean closeOnFinish;
+        private final String host;
+        /**
+         * Set by {@link Dispatcher} when the call starts waiting.
+         */
+        long waitingSince;
+        long rank;
+        long sequence;
 
         Request request() {
             return RealCall.this.request;
@@ -140,22 +154,103 @@ final class RealCall implements Call {
             return callback;
         }
 
-        private AsyncCall(Callback callback) {
+        String host() {
+            return host;
+        }
+
+        private AsyncCall(Callback callback, boolean closeOnFinish) {
             this.callback = callback;
+            this.closeOnFinish = closeOnFinish;
+            this.host = Utils.parseHost(Utils.emptyElse(request.url, netBird.baseUrl));
         }
 
         @Override
         public void run() {
+            final boolean canceled = RealCall.this.canceled.get();
+            if (!canceled && netBird.engine != null && SelectorEngine.accepts(netBird, request) && exchange()) {
+                return;
+            }
+            Response response = null;
+            IOException failure = null;
+            try {
+                if (!canceled) {
+                    response = getResponseWithInterceptorChain();
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            deliver(response, failure);
+        }
+
+        /**
+         * Hands the request over to the selector engine, the bridge and gzip interceptors are applied
+         * around the exchange as they would be by the chain.
+         *
+         * @return false if the resolved request must be sent by the chain instead.
+         */
+        private boolean exchange() {
+            final Request bridged;
+            try {
+                bridged = netBird.bridgeInterceptor.prepare(request);
+                if (!bridged.url.regionMatches(true, 0, "http:", 0, 5)) return false;
+                final Request network = netBird.gzipInterceptor.prepare(bridged);
+                exchange = netBird.engine.exchange(netBird, network, new SelectorEngine.Exchange.Listener() {
+                    @Override
+                    public void onComplete(final Response response, final IOException failure) {
+                        final Runnable delivery = new Runnable() {
+                            @Override
+                            public void run() {
+                                if (failure != null) {
+                                    deliver(null, failure);
+                                    return;
+                                }
+                                final Response result;
+                                try {
+                                    result = netBird.bridgeInterceptor.finish(bridged,
+                                            netBird.gzipInterceptor.finish(bridged, response));
+                                } catch (IOException e) {
+                                    deliver(null, e);
+                                    return;
+                                }
+                                deliver(result, null);
+                            }
+                        };
+                        try {
+                            netBird.executor.execute(delivery);
+                        } catch (RejectedExecutionException e) {
+                            // never on the selector thread, the callback may read a streamed body
+                            new Thread(delivery, "NetBird-Delivery").start();
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                deliver(null, e);
+                return true;
+            }
+            if (RealCall.this.canceled.get()) {
+                exchange.cancel();
+            }
+            return true;
+        }
+
+        /**
+         * Reports the result to the callback, neither response nor failure means the call was canceled before it ran.
+         */
+        private void deliver(Response response, IOException failure) {
             int code = HttpStatus.CODE_CONNECT_ERROR;
             String msg = null;
+            boolean delivered = false;
             try {
-                if (RealCall.this.canceled.get()) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (response == null) {
                     callback.onFailure(RealCall.this, HttpStatus.requestCanceled());
                 } else {
-                    final Response response = getResponseWithInterceptorChain();
                     code = response.code;
                     msg = response.msg;
                     callback.onResponse(RealCall.this, response);
+                    delivered = true;
                 }
             } catch (IOException e) {
                 Log.e(e);
@@ -168,7 +263,14 @@ final class RealCall implements Call {
             } finally {
                 callback.onFinish();
                 netBird.dispatcher.finished(this);
-                Utils.close(RealCall.this.connection);
+                if (closeOnFinish || !delivered) {
+                    Utils.close(RealCall.this.connection);
+                    final SelectorEngine.Exchange exchange = RealCall.this.exchange;
+                    if (exchange != null) {
+                        // a body left unread is still being streamed
+                        exchange.cancel();
+                    }
+                }
             }
         }
 
@@ -17,7 +17,6 @@
 package cc.colorcat.netbird;
 
 import java.io.IOException;
-import java.util.List;
 
 /**
  * Author: cxx
@@ -25,14 +24,19 @@ import java.util.List;
  * GitHub: https://github.com/ccolorcat
  */
 final class RealInterceptorChain implements Interceptor.Chain {
-    private final List<Interceptor> interceptors;
-    private final int index;
-    private final Request request;
+    private final Interceptor[] interceptors;
     private final Connection connection;
+    private int index;
+    private Request request;
 
-    RealInterceptorChain(List<Interceptor> interceptors, int index, Request request, Connection connection) {
+    /**
+     * One chain serves every hop of a call, {@link #proceed(Request)} moves it to the next
+     * interceptor and moves it back once that interceptor returns, so {@link #request()}
+     * always returns the request of the interceptor which is calling it.
+     */
+    RealInterceptorChain(Interceptor[] interceptors, Request request, Connection connection) {
         this.interceptors = interceptors;
-        this.index = index;
+        this.index = 0;
         this.request = request;
         this.connection = connection;
     }
@@ -49,8 +53,15 @@ final class RealInterceptorChain implements Interceptor.Chain {
 
     @Override
     public Response proceed(Request request) throws IOException {
-        RealInterceptorChain next = new RealInterceptorChain(interceptors, index + 1, request, connection);
-        Interceptor interceptor = interceptors.get(index);
-        return interceptor.intercept(next);
+        final int index = this.index;
+        final Request previous = this.request;
+        this.index = index + 1;
+        this.request = request;
+        try {
+            return interceptors[index].intercept(this);
+        } finally {
+            this.index = index;
+            this.request = previous;
+        }
     }
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A {@link ResponseBody} which can be read any number of times, so an interceptor can peek at or
+ * copy the body and still hand it on. Every {@link #stream()} starts from the first byte, the
+ * source is only read as far as the furthest consumer and recorded on the way, in memory up to
+ * the threshold and in a temporary file beyond it.
+ * <p>
+ * The temporary file is unlinked as soon as it is open where the platform allows, the descriptor
+ * is released by {@link #close()}.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public final class ReplayableBody extends ResponseBody {
+    public static final int DEFAULT_MEMORY_THRESHOLD = 64 * 1024;
+
+    /**
+     * @return {@code body} itself if it is replayable already, otherwise a new one which keeps up to
+     * {@link #DEFAULT_MEMORY_THRESHOLD} bytes in memory and spills to {@code java.io.tmpdir}.
+     */
+    public static ReplayableBody create(ResponseBody body) {
+        return create(body, DEFAULT_MEMORY_THRESHOLD, null);
+    }
+
+    /**
+     * @param memoryThreshold the number of bytes kept in memory, a longer body is moved to a file.
+     * @param spillDirectory  where the file is created, {@code null} means {@code java.io.tmpdir}.
+     */
+    public static ReplayableBody create(ResponseBody body, int memoryThreshold, File spillDirectory) {
+        if (body == null) throw new IllegalArgumentException("body == null");
+        if (memoryThreshold < 0) throw new IllegalArgumentException("memoryThreshold(" + memoryThreshold + ") < 0");
+        if (body instanceof ReplayableBody) return (ReplayableBody) body;
+        return new ReplayableBody(body, memoryThreshold, spillDirectory);
+    }
+
+    private final ResponseBody source;
+    private final InputStream input;
+    private final int memoryThreshold;
+    private final File spillDirectory;
+
+    private byte[] memory;
+    private RandomAccessFile spill;
+    private File spillFile;
+    private long recorded = 0L;
+    private boolean exhausted = false;
+    private boolean closed = false;
+
+    private ReplayableBody(ResponseBody source, int memoryThreshold, File spillDirectory) {
+        this.source = source;
+        this.input = source.stream();
+        this.memoryThreshold = memoryThreshold;
+        this.spillDirectory = spillDirectory;
+        final long length = source.contentLength();
+        this.memory = new byte[length >= 0L && length <= memoryThreshold
+                ? (int) length
+                : Math.min(memoryThreshold, BufferPool.BYTE_BUFFER_SIZE)];
+    }
+
+    @Override
+    public String contentType() {
+        return source.contentType();
+    }
+
+    /**
+     * @return the exact length once the source has been read to the end, the declared one until then.
+     */
+    @Override
+    public synchronized long contentLength() {
+        return exhausted ? recorded : source.contentLength();
+    }
+
+    @Override
+    public Charset charset() {
+        return source.charset();
+    }
+
+    /**
+     * @return a new stream positioned at the first byte of the body, closing it doesn't close the body.
+     */
+    @Override
+    public InputStream stream() {
+        return new Replay();
+    }
+
+    /**
+     * @return at most {@code byteCount} bytes from the start of the body, the source is read no further.
+     */
+    public byte[] peek(int byteCount) throws IOException {
+        if (byteCount < 0) throw new IllegalArgumentException("byteCount(" + byteCount + ") < 0");
+        final byte[] bytes = new byte[byteCount];
+        int count = 0;
+        for (int length; count < byteCount; count += length) {
+            length = read(count, bytes, count, byteCount - count);
+            if (length == -1) {
+                return Arrays.copyOf(bytes, count);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Copies the whole body to {@code output}, the body stays readable.
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        final InputStream replay = stream();
+        final byte[] buffer = BufferPool.takeBytes();
+        try {
+            for (int length = replay.read(buffer); length != -1; length = replay.read(buffer)) {
+                output.write(buffer, 0, length);
+            }
+            output.flush();
+        } finally {
+            BufferPool.recycle(buffer);
+        }
+    }
+
+    /**
+     * @return true if the body has outgrown the memory threshold and is kept in a file.
+     */
+    public synchronized boolean isSpilled() {
+        return spill != null;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        memory = null;
+        Utils.close(input);
+        Utils.close(spill);
+        if (spillFile != null && !spillFile.delete()) {
+            spillFile.deleteOnExit();
+        }
+    }
+
+    /**
+     * Reads the recorded bytes at {@code position}, pulls more from the source once the reader has
+     * caught up with the recording.
+     */
+    private synchronized int read(long position, byte[] buffer, int offset, int count) throws IOException {
+        if (closed) throw new IOException("closed");
+        while (position >= recorded) {
+            if (exhausted) return -1;
+            record();
+        }
+        final int length = (int) Math.min(count, recorded - position);
+        if (spill != null) {
+            spill.seek(position);
+            spill.readFully(buffer, offset, length);
+        } else {
+            System.arraycopy(memory, (int) position, buffer, offset, length);
+        }
+        return length;
+    }
+
+    private void record() throws IOException {
+        if (spill == null && recorded < memory.length) {
+            final int length = input.read(memory, (int) recorded, memory.length - (int) recorded);
+            if (length == -1) {
+                exhausted = true;
+            } else {
+                recorded += length;
+            }
+            return;
+        }
+        final byte[] buffer = BufferPool.takeBytes();
+        try {
+            final int length = input.read(buffer);
+            if (length == -1) {
+                exhausted = true;
+            } else {
+                append(buffer, length);
+            }
+        } finally {
+            BufferPool.recycle(buffer);
+        }
+    }
+
+    private void append(byte[] buffer, int length) throws IOException {
+        final long size = recorded + length;
+        if (spill == null && size <= memoryThreshold) {
+            final int capacity = (int) Math.max(size, Math.min(memoryThreshold, memory.length * 2L));
+            memory = Arrays.copyOf(memory, capacity);
+            System.arraycopy(buffer, 0, memory, (int) recorded, length);
+        } else {
+            if (spill == null) {
+                spill();
+            }
+            spill.seek(recorded);
+            spill.write(buffer, 0, length);
+        }
+        recorded = size;
+    }
+
+    private void spill() throws IOException {
+        final File file = File.createTempFile("netbird-", ".body", spillDirectory);
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(memory, 0, (int) recorded);
+        } catch (IOException e) {
+            Utils.close(raf);
+            file.delete();
+            throw e;
+        }
+        // an unlinked file stays usable through the open descriptor and can't be left behind
+        if (!file.delete()) {
+            spillFile = file;
+        }
+        spill = raf;
+        memory = null;
+    }
+
+
+    private final class Replay extends InputStream {
+        private final byte[] single = new byte[1];
+        private long position = 0L;
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+            if (len == 0) return 0;
+            final int length = ReplayableBody.this.read(position, b, off, len);
+            if (length > 0) {
+                position += length;
+            }
+            return length;
+        }
+
+        @Override
+        public int available() {
+            synchronized (ReplayableBody.this) {
+                return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, recorded - position));
+            }
+        }
+    }
+}
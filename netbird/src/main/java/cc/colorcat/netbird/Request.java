@@ -35,7 +35,9 @@ public class Request {
     final DownloadListener downloadListener;
     final String boundary;
     final Object tag;
+    final Priority priority;
     private RequestBody requestBody;
+    private int fingerprint;
 
     boolean freeze = false;
 
@@ -49,6 +51,7 @@ public class Request {
         this.downloadListener = builder.downloadListener;
         this.boundary = builder.boundary;
         this.tag = builder.tag;
+        this.priority = builder.priority;
     }
 
     public final String url() {
@@ -83,6 +86,10 @@ public class Request {
         return tag;
     }
 
+    public final Priority priority() {
+        return priority;
+    }
+
     final RequestBody requestBody() {
         if (requestBody == null) {
             requestBody = Utils.buildRequestBody(parameters, fileBodies, boundary);
@@ -90,6 +97,18 @@ public class Request {
         return requestBody;
     }
 
+    /**
+     * @return the cached {@link #hashCode()}, all the fields involved are immutable once built.
+     */
+    final int fingerprint() {
+        int result = fingerprint;
+        if (result == 0) {
+            result = hashCode();
+            fingerprint = result;
+        }
+        return result;
+    }
+
     public final boolean isFreeze() {
         return freeze;
     }
@@ -125,7 +144,8 @@ public class Request {
         if (!headers.equals(request.headers)) return false;
         if (downloadListener != null ? !downloadListener.equals(request.downloadListener) : request.downloadListener != null)
             return false;
-        return tag.equals(request.tag);
+        if (!tag.equals(request.tag)) return false;
+        return priority == request.priority;
     }
 
     @Override
@@ -139,6 +159,7 @@ public class Request {
         result = 31 * result + (downloadListener != null ? downloadListener.hashCode() : 0);
         result = 31 * result + boundary.hashCode();
         result = 31 * result + tag.hashCode();
+        result = 31 * result + priority.hashCode();
         return result;
     }
 
@@ -154,6 +175,7 @@ public class Request {
                 ", downloadListener=" + downloadListener +
                 ", boundary='" + boundary + '\'' +
                 ", tag=" + tag +
+                ", priority=" + priority +
                 ", freeze=" + freeze +
                 '}';
     }
@@ -169,6 +191,7 @@ public class Request {
         private DownloadListener downloadListener;
         private final String boundary;
         private Object tag;
+        private Priority priority;
         private RequestBody requestBody;
 
         public Builder() {
@@ -181,6 +204,7 @@ public class Request {
             this.downloadListener = null;
             this.boundary = "==" + System.currentTimeMillis() + "==";
             this.tag = this.boundary;
+            this.priority = Priority.NORMAL;
             this.requestBody = null;
         }
 
@@ -194,6 +218,7 @@ public class Request {
             this.downloadListener = request.downloadListener;
             this.boundary = request.boundary;
             this.tag = request.tag;
+            this.priority = request.priority;
             this.requestBody = null;
         }
 
@@ -224,6 +249,10 @@ public class Request {
             return tag;
         }
 
+        public final Priority priority() {
+            return priority;
+        }
+
         public final Parameters parameters() {
             return parameters.toParameters();
         }
@@ -451,6 +480,12 @@ public class Request {
             return this;
         }
 
+        public Builder priority(Priority priority) {
+            if (priority == null) throw new NullPointerException("priority == null");
+            this.priority = priority;
+            return this;
+        }
+
         public Request build() {
             return new Request(this);
         }
@@ -71,8 +71,11 @@ public abstract class ResponseBody implements Closeable {
         return Utils.justRead(reader(ifAbsent));
     }
 
+    /**
+     * Reads the body into an array pre-sized by {@link #contentLength()} when it is known.
+     */
     public final byte[] bytes() throws IOException {
-        return Utils.justRead(stream());
+        return Utils.justRead(stream(), contentLength());
     }
 
     @Override
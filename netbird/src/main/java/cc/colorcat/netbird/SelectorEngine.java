@@ -0,0 +1,820 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cc.colorcat.netbird;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exchanges plain HTTP/1.1 requests over non-blocking channels multiplexed by a single selector thread,
+ * so no thread waits for the network while a call is in flight. Small responses are buffered in memory,
+ * larger ones are handed over as soon as their headers arrive with a body fed by the selector thread,
+ * which stops reading the channel while the caller is behind. The channels are kept alive for the next
+ * exchange with the same host.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+final class SelectorEngine implements Runnable {
+    /**
+     * The number of threads of the default executor if the engine is used, they never wait for the network.
+     */
+    static final int WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final long TICK = 250L;
+    private static final int MAX_IDLE_PER_ROUTE = 5;
+    private static final long KEEP_ALIVE = TimeUnit.MINUTES.toMillis(5L);
+    /**
+     * Larger request bodies are left to the blocking connection instead of being buffered in memory.
+     */
+    private static final long MAX_REQUEST_BODY = 1024L * 1024L;
+    /**
+     * The most bytes of a response body held in memory, a larger body is streamed to the caller.
+     */
+    static final int MAX_BUFFERED_BODY = 256 * 1024;
+
+    private static volatile SelectorEngine instance;
+
+    static SelectorEngine get() throws IOException {
+        if (instance == null) {
+            synchronized (SelectorEngine.class) {
+                if (instance == null) {
+                    final SelectorEngine engine = new SelectorEngine(Selector.open());
+                    final Thread thread = new Thread(engine, "NetBird-Selector");
+                    thread.setDaemon(true);
+                    thread.start();
+                    instance = engine;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return true if the request can be exchanged by the engine, it must be checked again once resolved.
+     */
+    static boolean accepts(NetBird netBird, Request request) {
+        final Proxy proxy = netBird.proxy;
+        if (proxy != null && proxy.type() != Proxy.Type.DIRECT) return false;
+        if (request.downloadListener != null) return false;
+        final String url = Utils.emptyElse(request.url, netBird.baseUrl);
+        if (!url.regionMatches(true, 0, "http:", 0, 5)) return false;
+        if (!request.method.needBody()) return true;
+        final RequestBody body = request.requestBody();
+        try {
+            final long contentLength = body != null ? body.contentLength() : -1L;
+            return contentLength >= 0L && contentLength <= MAX_REQUEST_BODY;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private final Selector selector;
+    private final Queue<Exchange> registrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Exchange> cancellations = new ConcurrentLinkedQueue<>();
+    private final Queue<Exchange> resumptions = new ConcurrentLinkedQueue<>();
+    // the fields below are confined to the selector thread
+    private final Set<Exchange> exchanges = new HashSet<>();
+    private final Map<String, ArrayDeque<IdleChannel>> idleChannels = new HashMap<>();
+    private int idleCount = 0;
+    private long lastCheck = 0L;
+
+    private SelectorEngine(Selector selector) {
+        this.selector = selector;
+    }
+
+    /**
+     * Starts exchanging the request, the listener is notified on the selector thread.
+     *
+     * @throws IOException if the request can't be encoded or the host can't be resolved.
+     */
+    Exchange exchange(NetBird netBird, Request request, Exchange.Listener listener) throws IOException {
+        final Exchange exchange = new Exchange(this, request, netBird.connectTimeOut, netBird.readTimeOut, listener);
+        registrations.offer(exchange);
+        selector.wakeup();
+        return exchange;
+    }
+
+    private void cancel(Exchange exchange) {
+        cancellations.offer(exchange);
+        selector.wakeup();
+    }
+
+    private void resume(Exchange exchange) {
+        resumptions.offer(exchange);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        for (; ; ) {
+            try {
+                selector.select(exchanges.isEmpty() && idleCount == 0 ? 0L : TICK);
+                for (Exchange exchange = registrations.poll(); exchange != null; exchange = registrations.poll()) {
+                    start(exchange);
+                }
+                for (Exchange exchange = cancellations.poll(); exchange != null; exchange = cancellations.poll()) {
+                    if (exchanges.contains(exchange)) {
+                        fail(exchange, HttpStatus.requestCanceled());
+                    }
+                }
+                for (Exchange exchange = resumptions.poll(); exchange != null; exchange = resumptions.poll()) {
+                    if (exchanges.contains(exchange) && exchange.key.isValid()) {
+                        exchange.key.interestOps(SelectionKey.OP_READ);
+                        exchange.deadline = now() + exchange.readTimeOut;
+                    }
+                }
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                checkDeadlines();
+            } catch (Throwable t) {
+                Log.e(t);
+            }
+        }
+    }
+
+    private void start(Exchange exchange) {
+        exchanges.add(exchange);
+        final IdleChannel idle = pollIdle(exchange.route);
+        try {
+            if (idle != null) {
+                exchange.reused = true;
+                exchange.channel = idle.channel;
+                exchange.key = idle.key;
+                exchange.key.attach(exchange);
+                exchange.key.interestOps(SelectionKey.OP_WRITE);
+                exchange.deadline = now() + exchange.readTimeOut;
+            } else {
+                connect(exchange);
+            }
+        } catch (IOException e) {
+            fail(exchange, e);
+        }
+    }
+
+    private void connect(Exchange exchange) throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        exchange.channel = channel;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        if (channel.connect(exchange.address)) {
+            exchange.key = channel.register(selector, SelectionKey.OP_WRITE, exchange);
+            exchange.deadline = now() + exchange.readTimeOut;
+        } else {
+            exchange.key = channel.register(selector, SelectionKey.OP_CONNECT, exchange);
+            exchange.deadline = now() + exchange.connectTimeOut;
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        final Object attachment = key.attachment();
+        if (attachment instanceof IdleChannel) {
+            // an idle channel turns readable if the peer closed it or sent something unexpected
+            evictIdle((IdleChannel) attachment);
+            return;
+        }
+        final Exchange exchange = (Exchange) attachment;
+        try {
+            if (key.isConnectable()) {
+                exchange.channel.finishConnect();
+                key.interestOps(SelectionKey.OP_WRITE);
+                exchange.deadline = now() + exchange.readTimeOut;
+            } else if (key.isWritable()) {
+                exchange.channel.write(exchange.output);
+                if (!exchange.output.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    exchange.deadline = now() + exchange.readTimeOut;
+                }
+            } else if (key.isReadable()) {
+                read(exchange);
+            }
+        } catch (IOException e) {
+            fail(exchange, e);
+        } catch (CancelledKeyException e) {
+            fail(exchange, new IOException("channel closed", e));
+        }
+    }
+
+    private void read(Exchange exchange) throws IOException {
+        final int read = exchange.read();
+        if (read == 0) return;
+        if (read == -1 && exchange.reused && !exchange.received) {
+            // the server closed the kept alive channel before it saw the request, send it again on a new one
+            close(exchange.channel, exchange.key);
+            exchange.reset();
+            connect(exchange);
+            return;
+        }
+        exchange.deadline = now() + exchange.readTimeOut;
+        final boolean done = exchange.parse(read == -1);
+        final StreamedBody streamed = exchange.streamed;
+        if (done) {
+            exchanges.remove(exchange);
+            if (exchange.keepAlive()) {
+                recycle(exchange);
+            } else {
+                close(exchange.channel, exchange.key);
+            }
+            if (streamed != null) {
+                streamed.finish();
+            }
+        } else if (streamed != null && streamed.pauseIfFull()) {
+            // the caller resumes it once it has read half of what is buffered
+            exchange.key.interestOps(0);
+            exchange.deadline = Long.MAX_VALUE;
+        }
+        if (!exchange.delivered && (done || streamed != null)) {
+            exchange.delivered = true;
+            notify(exchange, exchange.response(), null);
+        }
+    }
+
+    private void fail(Exchange exchange, IOException cause) {
+        exchanges.remove(exchange);
+        close(exchange.channel, exchange.key);
+        if (exchange.delivered && exchange.streamed != null) {
+            exchange.streamed.fail(cause);
+        } else {
+            notify(exchange, null, cause);
+        }
+    }
+
+    private static void notify(Exchange exchange, Response response, IOException failure) {
+        try {
+            exchange.listener.onComplete(response, failure);
+        } catch (Throwable t) {
+            Log.e(t);
+        }
+    }
+
+    private void checkDeadlines() {
+        final long now = now();
+        if (now - lastCheck < TICK) return;
+        lastCheck = now;
+        List<Exchange> expired = null;
+        for (Exchange exchange : exchanges) {
+            if (exchange.deadline <= now) {
+                if (expired == null) expired = new ArrayList<>();
+                expired.add(exchange);
+            }
+        }
+        if (expired != null) {
+            for (int i = 0, size = expired.size(); i < size; ++i) {
+                final Exchange exchange = expired.get(i);
+                final boolean connecting = exchange.key != null && exchange.key.isValid()
+                        && exchange.key.interestOps() == SelectionKey.OP_CONNECT;
+                fail(exchange, new SocketTimeoutException(connecting ? "connect timed out" : "read timed out"));
+            }
+        }
+        if (idleCount > 0) {
+            final Iterator<ArrayDeque<IdleChannel>> iterator = idleChannels.values().iterator();
+            while (iterator.hasNext()) {
+                final ArrayDeque<IdleChannel> channels = iterator.next();
+                for (IdleChannel oldest = channels.peekLast(); oldest != null; oldest = channels.peekLast()) {
+                    if (now - oldest.since < KEEP_ALIVE) break;
+                    channels.pollLast();
+                    --idleCount;
+                    close(oldest.channel, oldest.key);
+                }
+                if (channels.isEmpty()) iterator.remove();
+            }
+        }
+    }
+
+    private void recycle(Exchange exchange) {
+        final IdleChannel idle = new IdleChannel(exchange.route, exchange.channel, exchange.key, now());
+        idle.key.attach(idle);
+        idle.key.interestOps(SelectionKey.OP_READ);
+        ArrayDeque<IdleChannel> channels = idleChannels.get(idle.route);
+        if (channels == null) {
+            channels = new ArrayDeque<>(MAX_IDLE_PER_ROUTE + 1);
+            idleChannels.put(idle.route, channels);
+        }
+        channels.offerFirst(idle);
+        ++idleCount;
+        if (channels.size() > MAX_IDLE_PER_ROUTE) {
+            final IdleChannel oldest = channels.pollLast();
+            --idleCount;
+            close(oldest.channel, oldest.key);
+        }
+    }
+
+    private IdleChannel pollIdle(String route) {
+        final ArrayDeque<IdleChannel> channels = idleChannels.get(route);
+        if (channels == null) return null;
+        final IdleChannel idle = channels.pollFirst();
+        if (idle != null) --idleCount;
+        if (channels.isEmpty()) idleChannels.remove(route);
+        return idle;
+    }
+
+    private void evictIdle(IdleChannel idle) {
+        final ArrayDeque<IdleChannel> channels = idleChannels.get(idle.route);
+        if (channels != null && channels.remove(idle)) {
+            --idleCount;
+            if (channels.isEmpty()) idleChannels.remove(idle.route);
+        }
+        close(idle.channel, idle.key);
+    }
+
+    private static void close(SocketChannel channel, SelectionKey key) {
+        if (key != null) key.cancel();
+        Utils.close(channel);
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+
+    private static final class IdleChannel {
+        private final String route;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final long since;
+
+        private IdleChannel(String route, SocketChannel channel, SelectionKey key, long since) {
+            this.route = route;
+            this.channel = channel;
+            this.key = key;
+            this.since = since;
+        }
+    }
+
+
+    static final class Exchange {
+        interface Listener {
+
+            /**
+             * Called on the selector thread with either the response or the failure, it must not block.
+             */
+            void onComplete(Response response, IOException failure);
+        }
+
+        private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+        private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+        private static final int STATUS_LINE = 0;
+        private static final int HEADERS = 1;
+        private static final int FIXED_LENGTH = 2;
+        private static final int CHUNK_SIZE = 3;
+        private static final int CHUNK_DATA = 4;
+        private static final int CHUNK_END = 5;
+        private static final int TRAILERS = 6;
+        private static final int UNTIL_EOF = 7;
+        private static final int DONE = 8;
+
+        private final SelectorEngine engine;
+        private final String route;
+        private final InetSocketAddress address;
+        private final ByteBuffer output;
+        private final boolean headRequest;
+        private final boolean closeRequested;
+        private final int connectTimeOut;
+        private final int readTimeOut;
+        private final Listener listener;
+
+        private SocketChannel channel;
+        private SelectionKey key;
+        private long deadline;
+        private boolean reused = false;
+        private boolean received = false;
+
+        private byte[] buffer = new byte[8192];
+        private int start = 0;
+        private int end = 0;
+        private int state = STATUS_LINE;
+        private int code;
+        private String msg;
+        private boolean http10;
+        private MutableHeaders headers;
+        private boolean keepAlive;
+        private long remaining;
+        /**
+         * Null if the body is discarded or streamed.
+         */
+        private ByteArrayOutputStream body;
+        private StreamedBody streamed;
+        private boolean discarded;
+        /**
+         * True once the listener has been notified, a streamed body may still be being received.
+         */
+        private boolean delivered = false;
+
+        private Exchange(SelectorEngine engine, Request request, int connectTimeOut, int readTimeOut, Listener listener) throws IOException {
+            this.engine = engine;
+            final URL url = new URL(request.url);
+            if (!"http".equalsIgnoreCase(url.getProtocol())) {
+                throw new ProtocolException("unsupported scheme: " + url.getProtocol());
+            }
+            final String host = url.getHost();
+            final int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+            this.route = host + ':' + port;
+            // resolved by the calling thread, the selector thread never blocks
+            this.address = new InetSocketAddress(host, port);
+            if (address.isUnresolved()) throw new UnknownHostException(host);
+            this.headRequest = request.method == Method.HEAD;
+            this.connectTimeOut = connectTimeOut;
+            this.readTimeOut = readTimeOut;
+            this.listener = listener;
+
+            final Headers headers = request.headers;
+            this.closeRequested = "close".equalsIgnoreCase(headers.value("Connection"));
+            final String file = url.getFile();
+            final StringBuilder head = new StringBuilder(256)
+                    .append(request.method.name()).append(' ').append(file.isEmpty() ? "/" : file).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(port == url.getDefaultPort() ? host : route).append("\r\n");
+            for (int i = 0, size = headers.size(); i < size; ++i) {
+                final String name = headers.name(i);
+                if ("Host".equalsIgnoreCase(name)) continue;
+                head.append(name).append(": ").append(headers.value(i)).append("\r\n");
+            }
+            head.append("\r\n");
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(head.length() + 256);
+            final byte[] headBytes = head.toString().getBytes(ISO_8859_1);
+            bos.write(headBytes, 0, headBytes.length);
+            final RequestBody requestBody = request.method.needBody() ? request.requestBody() : null;
+            if (requestBody != null) {
+                final ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.max(requestBody.contentLength(), 32L));
+                requestBody.writeTo(content);
+                if ("chunked".equalsIgnoreCase(headers.value("Transfer-Encoding"))) {
+                    final byte[] size = (Integer.toHexString(content.size()) + "\r\n").getBytes(ISO_8859_1);
+                    if (content.size() > 0) {
+                        bos.write(size, 0, size.length);
+                        content.writeTo(bos);
+                        bos.write('\r');
+                        bos.write('\n');
+                    }
+                    final byte[] last = "0\r\n\r\n".getBytes(ISO_8859_1);
+                    bos.write(last, 0, last.length);
+                } else {
+                    content.writeTo(bos);
+                }
+            }
+            this.output = ByteBuffer.wrap(bos.toByteArray());
+        }
+
+        void cancel() {
+            engine.cancel(this);
+        }
+
+        private void reset() {
+            output.rewind();
+            channel = null;
+            key = null;
+            reused = false;
+            received = false;
+            start = end = 0;
+            state = STATUS_LINE;
+            headers = null;
+            body = null;
+            discarded = false;
+        }
+
+        private int read() throws IOException {
+            if (buffer.length - end < 4096) {
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+                if (buffer.length - end < 4096) {
+                    final byte[] newBuffer = new byte[buffer.length << 1];
+                    System.arraycopy(buffer, 0, newBuffer, 0, end);
+                    buffer = newBuffer;
+                }
+            }
+            final int read = channel.read(ByteBuffer.wrap(buffer, end, buffer.length - end));
+            if (read > 0) {
+                end += read;
+                received = true;
+            }
+            return read;
+        }
+
+        /**
+         * @return true if the response has been received completely.
+         */
+        private boolean parse(boolean eof) throws IOException {
+            for (; ; ) {
+                final String line;
+                switch (state) {
+                    case STATUS_LINE:
+                        if ((line = readLine()) == null) return endOfStream(eof);
+                        code = NioConnection.parseCode(line);
+                        msg = line.length() > 13 ? line.substring(13) : "";
+                        http10 = line.startsWith("HTTP/1.0");
+                        headers = MutableHeaders.create(16);
+                        state = HEADERS;
+                        break;
+                    case HEADERS:
+                        if ((line = readLine()) == null) return endOfStream(eof);
+                        if (!line.isEmpty()) {
+                            try {
+                                headers.addLine(line);
+                            } catch (IllegalArgumentException e) {
+                                throw new ProtocolException(e.getMessage());
+                            }
+                        } else if (code >= 100 && code < 200 && code != 101) {
+                            // skip the informational response
+                            state = STATUS_LINE;
+                        } else {
+                            startBody();
+                        }
+                        break;
+                    case FIXED_LENGTH:
+                        take();
+                        if (remaining > 0L) return endOfStream(eof);
+                        state = DONE;
+                        break;
+                    case CHUNK_SIZE:
+                        if ((line = readLine()) == null) return endOfStream(eof);
+                        remaining = parseChunkSize(line);
+                        state = remaining == 0L ? TRAILERS : CHUNK_DATA;
+                        break;
+                    case CHUNK_DATA:
+                        take();
+                        if (remaining > 0L) return endOfStream(eof);
+                        state = CHUNK_END;
+                        break;
+                    case CHUNK_END:
+                        if ((line = readLine()) == null) return endOfStream(eof);
+                        if (!line.isEmpty()) throw new ProtocolException("expected CRLF after chunk");
+                        state = CHUNK_SIZE;
+                        break;
+                    case TRAILERS:
+                        if ((line = readLine()) == null) return endOfStream(eof);
+                        if (line.isEmpty()) state = DONE;
+                        break;
+                    case UNTIL_EOF:
+                        sink(buffer, start, end - start);
+                        start = end;
+                        if (!eof) return false;
+                        state = DONE;
+                        break;
+                    default:
+                        return true;
+                }
+            }
+        }
+
+        private void startBody() {
+            final Headers headers = this.headers;
+            final String connection = headers.value("Connection");
+            keepAlive = !closeRequested && (http10
+                    ? "keep-alive".equalsIgnoreCase(connection)
+                    : !"close".equalsIgnoreCase(connection));
+            // only these responses carry a body for the caller, the others are read to keep the channel
+            discarded = code != 200 && code != 206;
+            final long contentLength;
+            if (headRequest || code == 204 || code == 304) {
+                state = DONE;
+            } else if ("chunked".equalsIgnoreCase(headers.value("Transfer-Encoding"))) {
+                body = new ByteArrayOutputStream(8192);
+                state = CHUNK_SIZE;
+            } else if ((contentLength = headers.contentLength()) != -1L) {
+                if (contentLength > MAX_BUFFERED_BODY && !discarded) {
+                    streamed = new StreamedBody(this);
+                } else {
+                    body = new ByteArrayOutputStream((int) contentLength);
+                }
+                remaining = contentLength;
+                state = FIXED_LENGTH;
+            } else {
+                keepAlive = false;
+                body = new ByteArrayOutputStream(8192);
+                state = UNTIL_EOF;
+            }
+        }
+
+        private void take() {
+            final int count = (int) Math.min(remaining, end - start);
+            sink(buffer, start, count);
+            start += count;
+            remaining -= count;
+        }
+
+        /**
+         * Buffers the bytes of the body until there are more than {@link #MAX_BUFFERED_BODY}, then streams them.
+         */
+        private void sink(byte[] bytes, int offset, int length) {
+            if (discarded || length == 0) return;
+            if (streamed == null) {
+                body.write(bytes, offset, length);
+                if (body.size() <= MAX_BUFFERED_BODY) return;
+                streamed = new StreamedBody(this);
+                bytes = body.toByteArray();
+                offset = 0;
+                length = bytes.length;
+                body = null;
+            }
+            streamed.offer(bytes, offset, length);
+        }
+
+        private static boolean endOfStream(boolean eof) throws IOException {
+            if (eof) throw new EOFException("unexpected end of stream");
+            return false;
+        }
+
+        private String readLine() throws IOException {
+            for (int i = start; i < end; ++i) {
+                if (buffer[i] == '\n') {
+                    final int length = (i > start && buffer[i - 1] == '\r') ? i - 1 - start : i - start;
+                    final String line = new String(buffer, start, length, ISO_8859_1);
+                    start = i + 1;
+                    return line;
+                }
+            }
+            if (end - start > MAX_LINE_LENGTH) throw new ProtocolException("line too long");
+            return null;
+        }
+
+        private static long parseChunkSize(String line) throws ProtocolException {
+            final int extension = line.indexOf(';');
+            final String size = (extension != -1 ? line.substring(0, extension) : line).trim();
+            try {
+                final long result = Long.parseLong(size, 16);
+                if (result >= 0L) return result;
+            } catch (NumberFormatException ignore) {
+            }
+            throw new ProtocolException("unexpected chunk size: " + line);
+        }
+
+        /**
+         * @return true if the channel can be reused, nothing must be left unread.
+         */
+        private boolean keepAlive() {
+            return keepAlive && start == end;
+        }
+
+        private Response response() {
+            final Headers headers = this.headers.toHeaders();
+            ResponseBody responseBody = null;
+            if (streamed != null) {
+                responseBody = ResponseBody.create(streamed, headers);
+            } else if (code == 200 || code == 206) {
+                final byte[] bytes = body != null ? body.toByteArray() : new byte[0];
+                responseBody = ResponseBody.create(new ByteArrayInputStream(bytes), headers);
+            }
+            return new Response.Builder()
+                    .responseCode(code)
+                    .responseMsg(msg)
+                    .headers(headers)
+                    .responseBody(responseBody)
+                    .build();
+        }
+    }
+
+
+    /**
+     * A response body filled by the selector thread and read by the caller, closing it before
+     * the end cancels the exchange.
+     */
+    private static final class StreamedBody extends InputStream {
+        private final Exchange exchange;
+        private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+        private int position = 0;
+        private int buffered = 0;
+        private boolean paused = false;
+        private boolean finished = false;
+        private boolean closed = false;
+        private IOException failure;
+
+        private StreamedBody(Exchange exchange) {
+            this.exchange = exchange;
+        }
+
+        private synchronized void offer(byte[] bytes, int offset, int length) {
+            if (closed) return;
+            chunks.offer(Arrays.copyOfRange(bytes, offset, offset + length));
+            buffered += length;
+            notifyAll();
+        }
+
+        /**
+         * @return true if the selector must stop reading until {@link SelectorEngine#resume(Exchange)}.
+         */
+        private synchronized boolean pauseIfFull() {
+            paused = !closed && buffered >= MAX_BUFFERED_BODY;
+            return paused;
+        }
+
+        private synchronized void finish() {
+            finished = true;
+            notifyAll();
+        }
+
+        private synchronized void fail(IOException cause) {
+            if (!finished) failure = cause;
+            notifyAll();
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+            final int read;
+            final boolean resume;
+            synchronized (this) {
+                if (closed) throw new IOException("closed");
+                if (len == 0) return 0;
+                while (chunks.isEmpty()) {
+                    if (failure != null) throw failure;
+                    if (finished) return -1;
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                final byte[] chunk = chunks.peek();
+                read = Math.min(len, chunk.length - position);
+                System.arraycopy(chunk, position, b, off, read);
+                position += read;
+                if (position == chunk.length) {
+                    chunks.poll();
+                    position = 0;
+                }
+                buffered -= read;
+                resume = paused && buffered <= MAX_BUFFERED_BODY >> 1;
+                if (resume) paused = false;
+            }
+            if (resume) {
+                exchange.engine.resume(exchange);
+            }
+            return read;
+        }
+
+        @Override
+        public synchronized int available() {
+            return closed ? 0 : buffered;
+        }
+
+        @Override
+        public void close() {
+            final boolean cancel;
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                chunks.clear();
+                buffered = 0;
+                cancel = !finished && failure == null;
+            }
+            if (cancel) {
+                exchange.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 cxx
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package cc.colorcat.netbird;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A parser for responses holding a large json array, it hands each element to
+ * {@link MRequest.ElementListener#onElement(Object)} as soon as it has been read instead of
+ * collecting them, the result is the number of elements read.
+ * <p>
+ * Elements are delivered on the target thread of the {@link Platform} in the order they were read,
+ * all of them before {@link MRequest.Listener#onSuccess(Object)} or {@link MRequest.Listener#onFailure(int, String)}.
+ * At most {@link #MAX_PENDING_ELEMENTS} wait for the target thread at a time, reading pauses until it
+ * catches up, so a busy target thread doesn't make the whole document pile up in its queue.
+ * If the body turns out to be malformed half way through, the elements read so far have already been
+ * delivered when {@code onFailure} is called.
+ * <p>
+ * Author: cxx
+ * Date: 2026-10-18
+ * GitHub: https://github.com/ccolorcat
+ */
+public abstract class StreamingParser<E> implements Parser<Integer> {
+    public static final int MAX_PENDING_ELEMENTS = 64;
+
+    /**
+     * Reads the elements and drops them, only counts.
+     */
+    @Override
+    public final NetworkData<? extends Integer> parse(Response response) throws IOException {
+        return parse(response, null);
+    }
+
+    final NetworkData<? extends Integer> parse(Response response, MRequest.ElementListener<? super E> listener) throws IOException {
+        final ElementSink<E> sink = new ElementSink<>(listener);
+        try {
+            readElements(response, generateType(), sink);
+            return NetworkData.newSuccess(sink.count);
+        } catch (Exception e) {
+            throw new StateIOException(response.responseCode(), response.responseMsg(), e);
+        }
+    }
+
+    /**
+     * Reads the json array from the body of {@code response} and calls {@link Sink#accept(Object)}
+     * for each element, in order.
+     *
+     * @param elementType the type of the elements, the same instance for every call on the same parser class.
+     */
+    protected abstract void readElements(Response response, Type elementType, Sink<? super E> sink) throws Exception;
+
+    protected final Type generateType() {
+        return JsonParser.typeArguments(getClass())[0];
+    }
+
+    protected Charset charsetIfAbsent() {
+        return Utils.UTF8;
+    }
+
+
+    public interface Sink<E> {
+
+        /**
+         * @throws InterruptedIOException if interrupted while waiting for the target thread.
+         */
+        void accept(E element) throws IOException;
+    }
+
+    private static final class ElementSink<E> implements Sink<E> {
+        private final MRequest.ElementListener<? super E> listener;
+        private final Semaphore pending = new Semaphore(MAX_PENDING_ELEMENTS);
+        private int count = 0;
+
+        private ElementSink(MRequest.ElementListener<? super E> listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void accept(final E element) throws IOException {
+            ++count;
+            if (listener != null) {
+                if (Utils.isTargetThread()) {
+                    listener.onElement(element);
+                } else {
+                    try {
+                        pending.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("interrupted while waiting for the target thread");
+                    }
+                    Utils.onTargetThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                listener.onElement(element);
+                            } finally {
+                                pending.release();
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+}
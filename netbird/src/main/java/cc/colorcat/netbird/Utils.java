@@ -16,24 +16,25 @@
 
 package cc.colorcat.netbird;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -45,6 +46,10 @@ import java.util.concurrent.TimeUnit;
  */
 final class Utils {
     static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * The largest declared length trusted to size an array up front.
+     */
+    private static final int MAX_EXACT_SIZE = 1024 * 1024;
 
     static <T> List<T> immutableList(List<T> list) {
         return Collections.unmodifiableList(new ArrayList<>(list));
@@ -106,22 +111,28 @@ final class Utils {
         return defaultValue;
     }
 
+    /**
+     * Copies in {@link BufferPool#BYTE_BUFFER_SIZE} blocks, so neither stream needs to be buffered.
+     */
     static void justDump(InputStream input, OutputStream output) throws IOException {
-        BufferedInputStream bis = buffered(input);
-        BufferedOutputStream bos = buffered(output);
-        byte[] buffer = new byte[8192];
-        for (int length = bis.read(buffer); length != -1; length = bis.read(buffer)) {
-            bos.write(buffer, 0, length);
+        byte[] buffer = BufferPool.takeBytes();
+        try {
+            for (int length = input.read(buffer); length != -1; length = input.read(buffer)) {
+                output.write(buffer, 0, length);
+            }
+            output.flush();
+        } finally {
+            BufferPool.recycle(buffer);
         }
-        bos.flush();
-    }
-
-    static BufferedInputStream buffered(InputStream input) {
-        return input instanceof BufferedInputStream ? (BufferedInputStream) input : new BufferedInputStream(input);
     }
 
-    static BufferedOutputStream buffered(OutputStream output) {
-        return output instanceof BufferedOutputStream ? (BufferedOutputStream) output : new BufferedOutputStream(output);
+    static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            // some platforms refuse to rename onto an existing file
+            if (!to.delete() || !from.renameTo(to)) {
+                throw new IOException("Can't rename " + from.getAbsolutePath() + " to " + to.getAbsolutePath());
+            }
+        }
     }
 
     static void close(Closeable closeable) {
@@ -182,40 +193,106 @@ final class Utils {
         return url;
     }
 
+    /**
+     * @return the host of the url or an empty string if it can't be parsed.
+     */
+    static String parseHost(String url) {
+        try {
+            return nullElse(URI.create(url).getHost(), "");
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
     static String justRead(Reader reader) throws IOException {
         StringBuilder builder = new StringBuilder();
-        BufferedReader br = new BufferedReader(reader);
-        char[] buffer = new char[4096];
-        for (int length = br.read(buffer); length != -1; length = br.read(buffer)) {
-            builder.append(buffer, 0, length);
+        char[] buffer = BufferPool.takeChars();
+        try {
+            for (int length = reader.read(buffer); length != -1; length = reader.read(buffer)) {
+                builder.append(buffer, 0, length);
+            }
+        } finally {
+            BufferPool.recycle(buffer);
         }
         return builder.toString();
     }
 
     static byte[] justRead(InputStream input) throws IOException {
-        BufferedInputStream bis = buffered(input);
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        byte[] buffer = new byte[8192];
-        for (int length = bis.read(buffer); length != -1; length = bis.read(buffer)) {
-            bos.write(buffer, 0, length);
+        byte[] buffer = BufferPool.takeBytes();
+        try {
+            for (int length = input.read(buffer); length != -1; length = input.read(buffer)) {
+                bos.write(buffer, 0, length);
+            }
+        } finally {
+            BufferPool.recycle(buffer);
         }
-        bos.flush();
+        return bos.toByteArray();
+    }
+
+    /**
+     * Reads the whole stream into an array of exactly {@code contentLength} bytes when the length
+     * is known and at most {@link #MAX_EXACT_SIZE}, so there is neither array doubling nor a final copy.
+     * Falls back to the growable path if the length is unknown (-1L), a larger length only sets
+     * the initial capacity, so a bogus Content-Length can't allocate more than the bytes that arrive.
+     * A stream shorter than declared is trimmed, a longer one is read to the end anyway.
+     */
+    static byte[] justRead(InputStream input, long contentLength) throws IOException {
+        if (contentLength < 0L) {
+            return justRead(input);
+        }
+        if (contentLength > MAX_EXACT_SIZE) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(MAX_EXACT_SIZE);
+            justDump(input, bos);
+            return bos.toByteArray();
+        }
+        final int size = (int) contentLength;
+        byte[] bytes = new byte[size];
+        int count = 0;
+        for (int length; count < size; count += length) {
+            length = input.read(bytes, count, size - count);
+            if (length == -1) {
+                return Arrays.copyOf(bytes, count);
+            }
+        }
+        int next = input.read();
+        if (next == -1) {
+            return bytes;
+        }
+        // the declared length was wrong, keep what we have and continue growable
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(size + BufferPool.BYTE_BUFFER_SIZE);
+        bos.write(bytes, 0, size);
+        bos.write(next);
+        justDump(input, bos);
         return bos.toByteArray();
     }
 
     static ExecutorService defaultService(int corePoolSize) {
         ThreadPoolExecutor executor = new ThreadPoolExecutor(
                 corePoolSize,
-                10,
+                Math.max(corePoolSize, 10),
                 60L,
                 TimeUnit.SECONDS,
                 new LinkedBlockingDeque<Runnable>(),
-                new ThreadPoolExecutor.DiscardOldestPolicy()
+                new ThreadPoolExecutor.AbortPolicy()
         );
         executor.allowCoreThreadTimeOut(true);
         return executor;
     }
 
+    /**
+     * @return an executor which starts a new virtual thread for each task,
+     * or null if the runtime doesn't support virtual threads.
+     */
+    static ExecutorService virtualThreadService() {
+        try {
+            java.lang.reflect.Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     static boolean isTargetThread() {
         return Platform.get().scheduler().isTargetThread();
     }